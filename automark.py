@@ -150,6 +150,11 @@ if __name__ == '__main__':
         succ_count += build.succ_count
         total_count += build.count
 
+    # the checks of the compiler internals, see src/java/check/Checks.java
+    pc = subprocess.run(["java", "-cp", "bin", "check.Checks", "tests"])
+    succ_count += pc.returncode == 0
+    total_count += 1
+
     print("TOTAL: {}/{}".format(succ_count, total_count))
 
     if succ_count == total_count:
@@ -1,16 +1,47 @@
+import ast.ASTCounter;
 import ast.ASTPrinter;
 import ast.Program;
+import compiler.BatchCompiler;
+import compiler.CompilationSession;
+import compiler.CompilationStats;
+import compiler.CompilationStats.Counter;
+import compiler.CompilationStats.Phase;
+import compiler.CompileCache;
+import compiler.CompileClient;
+import compiler.CompileServer;
+import compiler.IRDump;
 import gen.CodeGenerator;
+import gen.FunctionCache;
+import lexer.HeaderCache;
+import lexer.ParallelTokeniser;
 import lexer.Scanner;
 import lexer.Token;
+import lexer.TokenBuffer;
 import lexer.Tokeniser;
+import parser.Includes;
 import parser.Parser;
 import sem.SemanticAnalyzer;
+import util.OutputFile;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
 import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 
 /**
@@ -26,114 +57,468 @@ public class Main {
     private static final int PARSER_FAIL    = 245;
     private static final int SEM_FAIL       = 240;
     private static final int PASS           = 0;
+
+    private static final int BUFFER = 1 << 16;
+
+    // the caches of every compilation of this process, out of the source trees: -Dminic.cache=dir, or
+    // ~/.cache/minic by default
+    private static final File CACHE_DIR = new File(System.getProperty("minic.cache",
+            new File(System.getProperty("user.home"), ".cache/minic").getPath())).getAbsoluteFile();
+    private static final File HEADER_CACHE = new File(CACHE_DIR, "headers");
+    private static final File ASSEMBLY_CACHE = new File(CACHE_DIR, "assembly");
+    private static final File FUNCTION_CACHE = new File(CACHE_DIR, "functions");
+    // shared by the compilations of this process, so -batch workers and -server requests lex a header once
+    private static final HeaderCache HEADERS = new HeaderCache(HEADER_CACHE);
+    private static final List<String> PASSES = Arrays.asList("-lexer", "-parser", "-ast", "-sem", "-gen");
     
     private enum Mode {
         LEXER, PARSER, AST, SEMANTICANALYSIS, GEN
     }
 
-    private static void usage() {
-        System.out.println("Usage: java "+Main.class.getSimpleName()+" pass inputfile outputfile");
-        System.out.println("where pass is either: -lexer, -parser, -ast, -sem or -gen");
-        System.exit(-1);
+    private static int usage(PrintStream out) {
+        out.println("Usage: java "+Main.class.getSimpleName()+" [options] pass inputfile outputfile");
+        out.println("   or: java "+Main.class.getSimpleName()+" -batch [-jobs n] [options] pass outputdir input...");
+        out.println("   or: java "+Main.class.getSimpleName()+" -server [-port n] [-stop]");
+        out.println("   or: java "+Main.class.getSimpleName()+" -cachestats");
+        out.println("where pass is either: -lexer, -parser, -ast, -sem or -gen");
+        out.println("and options are:");
+        out.println("  -pipeline  lex on a separate thread, ahead of the parser");
+        out.println("  -parallel  lex the whole file in chunks on every processor before parsing it, the lexing errors");
+        out.println("             are then all reported first");
+        out.println("  -includes  expand #include directives, headers are cached pre-tokenised in " + HEADER_CACHE);
+        out.println("  -stats     print the time and allocations of each phase and what it did on the error output");
+        out.println("  -cache     reuse the assembly of an identical earlier compilation (-gen only), cached in " + ASSEMBLY_CACHE);
+        out.println("  -incremental  reuse the code of the functions unchanged since an earlier compilation (-gen only),");
+        out.println("             cached in " + FUNCTION_CACHE);
+        out.println("  -cachesize n  bound of each cache in megabytes, the least recently used entries are evicted beyond it,");
+        out.println("             " + (CompileCache.DEFAULT_LIMIT >> 20) + " by default");
+        out.println("  -dump=kind[:function],...  write the intermediate representations of each function, or of the");
+        out.println("             given one, to outputfile.dump/: ast, cfg, liveness (the live sets) or interference");
+        out.println("  -client    have the compile server started with -server do the work, locally if there is none");
+        out.println("  -port n    port of the compile server on the loopback interface, " + CompileServer.DEFAULT_PORT + " by default");
+        out.println("-server -stop stops the compile server once the requests it has accepted are done");
+        out.println("the caches are kept in " + CACHE_DIR + ", set another directory with java -Dminic.cache=dir");
+        out.println("-cachestats prints the hits and misses of the caches since they were created, and their size");
+        out.println("a batch compiles each input file, and each .c file under an input directory, to a .s file under");
+        out.println("outputdir, on n threads (one per processor by default), and reports the exit status of each:");
+        out.println("  -jobs n    number of files compiled at once");
+        return -1;
     }
 
-    public static void main(String[] args) {
+    // relative paths are resolved against dir, the working directory of the client in server mode
+    private static File file(File dir, String path) {
+        File file = new File(path);
+        return dir == null || file.isAbsolute() ? file : new File(dir, path);
+    }
 
-        if (args.length != 3)
-            usage();
+    // the parser reads the tokens lexed already if there are any
+    private static Parser newParser(Tokeniser tokeniser, TokenBuffer lexed, File inputFile, boolean pipeline,
+                                    boolean expandIncludes, boolean timeLexing, PrintStream out) {
+        Parser parser;
+        if (lexed != null)
+            parser = new Parser(lexed);
+        else if (pipeline)
+            parser = new Parser(TokenBuffer.pipelined(tokeniser));
+        else {
+            tokeniser.setTimed(timeLexing);
+            parser = new Parser(tokeniser);
+        }
+        if (expandIncludes)
+            parser.setIncludes(new Includes(HEADERS), inputFile);
+        parser.setOutput(out);
+        return parser;
+    }
+
+    // the lexing time of a timed tokeniser is taken out of the parsing time
+    private static Program parse(Parser parser, Tokeniser tokeniser, CompilationStats stats) {
+        stats.begin(Phase.PARSING);
+        Program program = parser.parse();
+        stats.end();
+        if (tokeniser.getNanos() > 0)
+            stats.split(Phase.PARSING, Phase.LEXING, tokeniser.getNanos());
+        stats.count(Counter.TOKENS, parser.getTokenCount());
+        if (parser.getErrorCount() == 0)
+            stats.count(Counter.AST_NODES, ASTCounter.count(program));
+        return program;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals("-batch"))
+            System.exit(batch(args));
+        if (args.length > 0 && args[0].equals("-server")) {
+            int port = CompileServer.DEFAULT_PORT;
+            boolean stop = false;
+            try {
+                for (int i = 1; i < args.length; i++) {
+                    if (args[i].equals("-port") && i + 1 < args.length)
+                        port = Integer.parseInt(args[++i]);
+                    else if (args[i].equals("-stop"))
+                        stop = true;
+                    else
+                        System.exit(usage(System.out));
+                }
+            } catch (NumberFormatException e) {
+                System.exit(usage(System.out));
+            }
+            if (stop) {
+                if (!CompileClient.stop(port)) {
+                    System.err.println("No compile server on port " + port);
+                    System.exit(1);
+                }
+                return;
+            }
+            new CompileServer(port, Main::run).serve();
+            return;
+        }
+        if (args.length == 1 && args[0].equals("-cachestats")) {
+            System.out.println("assembly");
+            new CompileCache(ASSEMBLY_CACHE, CompileCache.DEFAULT_LIMIT).stats().print(System.out);
+            System.out.println("functions");
+            new CompileCache(FUNCTION_CACHE, CompileCache.DEFAULT_LIMIT).stats().print(System.out);
+            return;
+        }
+
+        for (int i = 0; i < args.length - 3; i++) {
+            if (args[i].equals("-client"))
+                System.exit(client(args, i));
+        }
+        System.exit(run(args, null, System.out, System.err));
+    }
+
+    // sends the command, without the -client option, to the compile server, or runs it here if there is none
+    private static int client(String[] args, int clientOption) throws IOException {
+        String[] command = new String[args.length - 1];
+        System.arraycopy(args, 0, command, 0, clientOption);
+        System.arraycopy(args, clientOption + 1, command, clientOption, command.length - clientOption);
+
+        int port = CompileServer.DEFAULT_PORT;
+        for (int i = 0; i < command.length - 4; i++) {
+            if (command[i].equals("-port")) {
+                try {
+                    port = Integer.parseInt(command[i + 1]);
+                } catch (NumberFormatException e) {
+                    return usage(System.out);
+                }
+            }
+        }
+        int status = CompileClient.run(port, command, new File("").getAbsoluteFile(), System.out, System.err);
+        return status == CompileClient.NO_SERVER ? run(command, null, System.out, System.err) : status;
+    }
+
+    /*
+     * Returns PASS if every file passes, otherwise the status of the first that does not.
+     */
+    private static int batch(String[] args) throws InterruptedException {
+        int jobs = Runtime.getRuntime().availableProcessors();
+        List<String> options = new ArrayList<>();
+        int first = 1;
+        try {
+            for (; first < args.length && !PASSES.contains(args[first]); first++) {
+                if (args[first].equals("-jobs") && first + 1 < args.length)
+                    jobs = Integer.parseInt(args[++first]);
+                else
+                    options.add(args[first]);
+            }
+        } catch (NumberFormatException e) {
+            return usage(System.out);
+        }
+        if (args.length - first < 3 || jobs < 1)
+            return usage(System.out);
+        options.add(args[first]);
+
+        File outputDir = new File(args[first + 1]);
+        List<File> inputs = new ArrayList<>();
+        List<File> outputs = new ArrayList<>();
+        for (int i = first + 2; i < args.length; i++) {
+            File input = new File(args[i]);
+            if (input.isDirectory())
+                sources(input, outputDir, inputs, outputs);
+            else {
+                inputs.add(input);
+                outputs.add(new File(outputDir, assembly(input.getName())));
+            }
+        }
+        Set<File> seen = new HashSet<>();
+        for (int i = 0; i < outputs.size(); i++) {
+            if (!seen.add(outputs.get(i))) {
+                System.out.println("File " + inputs.get(i) + " would overwrite the output of another input.");
+                return usage(System.out);
+            }
+            outputs.get(i).getParentFile().mkdirs();
+        }
+
+        int[] statuses = new BatchCompiler(Main::run, jobs)
+                .run(options.toArray(new String[0]), inputs, outputs, System.out, System.err);
+        for (int status : statuses) {
+            if (status != PASS)
+                return status;
+        }
+        return PASS;
+    }
+
+    // the .c files under a directory, in name order, and their outputs in the same tree under outputDir
+    private static void sources(File dir, File outputDir, List<File> inputs, List<File> outputs) {
+        File[] files = dir.listFiles();
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isDirectory())
+                sources(file, new File(outputDir, file.getName()), inputs, outputs);
+            else if (file.getName().endsWith(".c")) {
+                inputs.add(file);
+                outputs.add(new File(outputDir, assembly(file.getName())));
+            }
+        }
+    }
+
+    private static String assembly(String source) {
+        return (source.endsWith(".c") ? source.substring(0, source.length() - 2) : source) + ".s";
+    }
+
+    /*
+     * Runs a command line and returns the exit status. The files are relative to dir, or to the current
+     * directory if dir is null, and the output goes to out and err instead of System.out and System.err.
+     * The exceptions thrown by the compiler are not caught.
+     */
+    public static int run(String[] args, File dir, PrintStream out, PrintStream err) {
+
+        if (args.length < 3)
+            return usage(out);
+
+        // options come first, the last three arguments are always the pass and the files
+        boolean pipeline = false;
+        boolean parallel = false;
+        boolean expandIncludes = false;
+        boolean stats = false;
+        boolean cached = false;
+        boolean incremental = false;
+        String dumps = null;
+        long cacheSize = CompileCache.DEFAULT_LIMIT;
+        for (int i = 0; i < args.length - 3; i++) {
+            switch (args[i]) {
+                case "-stats": stats = true; break;
+                case "-cache": cached = true; break;
+                case "-incremental": incremental = true; break;
+                case "-cachesize":
+                    if (++i == args.length - 3)
+                        return usage(out);
+                    try {
+                        cacheSize = Long.parseLong(args[i]) << 20;
+                    } catch (NumberFormatException e) {
+                        return usage(out);
+                    }
+                    break;
+                case "-pipeline": pipeline = true; break;
+                case "-parallel": parallel = true; break;
+                case "-includes": expandIncludes = true; break;
+                case "-port": i++; break; // already used by the client
+                default:
+                    if (!args[i].startsWith("-dump="))
+                        return usage(out);
+                    dumps = args[i].substring("-dump=".length());
+            }
+        }
+        int first = args.length - 3;
 
         Mode mode = null;
-        switch (args[0]) {
+        switch (args[first]) {
             case "-lexer":  mode = Mode.LEXER; break;
             case "-parser": mode = Mode.PARSER; break;
             case "-ast":    mode = Mode.AST; break;
             case "-sem":    mode = Mode.SEMANTICANALYSIS; break;
             case "-gen":    mode = Mode.GEN; break;
             default:
-                usage();
-                break;
+                return usage(out);
         }
 
-        File inputFile = new File(args[1]);
-        File outputFile = new File(args[2]);
+        File inputFile = file(dir, args[first + 1]);
+        File outputFile = file(dir, args[first + 2]);
+        IRDump dump = IRDump.NONE;
+        if (dumps != null) {
+            try {
+                dump = IRDump.parse(dumps, file(dir, args[first + 2] + ".dump"), err);
+            } catch (IllegalArgumentException e) {
+                return usage(out);
+            }
+        }
 
+        // the source is read once when it is cached, so that the key and the compilation see the same content
+        CompileCache cache = cached && mode == Mode.GEN ? new CompileCache(ASSEMBLY_CACHE, cacheSize) : null;
+        byte[] source = null;
         Scanner scanner;
         try {
-            scanner = new Scanner(inputFile);
-        } catch (FileNotFoundException e) {
-            System.out.println("File "+inputFile.toString()+" does not exist.");
-            System.exit(FILE_NOT_FOUND);
-            return;
+            if (cache != null) {
+                source = Files.readAllBytes(inputFile.toPath());
+                scanner = new Scanner(Charset.defaultCharset().decode(ByteBuffer.wrap(source)).toString());
+            } else
+                scanner = new Scanner(inputFile);
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            out.println("File "+new File(args[first + 1])+" does not exist.");
+            return FILE_NOT_FOUND;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
 
+        FunctionCache functions = incremental && mode == Mode.GEN
+                ? new FunctionCache(new CompileCache(FUNCTION_CACHE, cacheSize)) : null;
+        CompilationSession session = new CompilationSession(out, err);
+        session.setDump(dump);
+        try {
+            if (cache == null)
+                return pass(mode, scanner, session, inputFile, outputFile, args[first + 2], pipeline,
+                        parallel, expandIncludes, stats, functions);
+
+            // the other options do not change the assembly
+            List<String> options = Arrays.asList(args[first], expandIncludes ? "-includes" : "");
+            String key = null;
+            try {
+                key = cache.key(source, inputFile, options, expandIncludes);
+                // the dumps are only written by a compilation
+                byte[] assembly = dump == IRDump.NONE ? cache.lookup(key) : null;
+                if (assembly != null) {
+                    session.getStats().count(Counter.CACHE_HITS, 1);
+                    try {
+                        OutputFile.write(outputFile, output -> output.write(assembly));
+                    } catch (FileNotFoundException e) {
+                        out.println("File "+args[first + 2]+" does not exist.");
+                        return FILE_NOT_FOUND;
+                    }
+                    return PASS;
+                }
+            } catch (IOException e) {
+                // the cache is only an optimisation, the file is still compiled
+                key = null;
+            }
+            session.getStats().count(Counter.CACHE_MISSES, 1);
+            int status = pass(mode, scanner, session, inputFile, outputFile, args[first + 2], pipeline,
+                    parallel, expandIncludes, stats, functions);
+            if (status == PASS && key != null) {
+                try {
+                    cache.store(key, Files.readAllBytes(outputFile.toPath()));
+                } catch (IOException e) {
+                    // not stored, compiled again next time
+                }
+            }
+            return status;
+        } finally {
+            dump.close();
+            session.getStats().commit();
+            if (stats)
+                session.getStats().print(err);
+        }
+    }
+
+    /*
+     * With timeLexing, the tokeniser times each token it scans for the parser, to time the two apart in the
+     * stats. The file is still lexed as it is parsed, the errors are reported in the same order.
+     * With parallel, the whole file is lexed on the common pool first and its lexing errors come first.
+     */
+    private static int pass(Mode mode, Scanner scanner, CompilationSession session, File inputFile,
+                            File outputFile, String outputName, boolean pipeline, boolean parallel,
+                            boolean expandIncludes, boolean timeLexing, FunctionCache functions) {
+        PrintStream out = session.getOut();
+        PrintStream err = session.getErr();
+        CompilationStats stats = session.getStats();
         Tokeniser tokeniser = new Tokeniser(scanner);
+        tokeniser.setOutput(out);
+        TokenBuffer lexed = null;
+        int lexingErrors = 0;
+        if (parallel) {
+            ParallelTokeniser lexer = new ParallelTokeniser(scanner, ForkJoinPool.commonPool());
+            lexer.setOutput(out);
+            stats.begin(Phase.LEXING);
+            lexed = lexer.tokenise();
+            stats.end();
+            lexingErrors = lexer.getErrorCount();
+        }
         if (mode == Mode.LEXER) {
-            for (Token t = tokeniser.nextToken(); t.tokenClass != Token.TokenClass.EOF; t = tokeniser.nextToken()) 
-            	System.out.println(t);
-            if (tokeniser.getErrorCount() == 0)
-        		System.out.println("Lexing: pass");
+            // the tokens and the errors between them go through one buffer, out may flush at each line
+            PrintStream buffered = new PrintStream(new BufferedOutputStream(out, BUFFER));
+            tokeniser.setOutput(buffered);
+            stats.begin(Phase.LEXING);
+            int tokens = 1; // EOF
+            if (lexed != null) {
+                for (; tokens < lexed.size(); tokens++)
+                    buffered.println(lexed.get(tokens - 1));
+            } else {
+                for (Token t = tokeniser.nextToken(); t.tokenClass != Token.TokenClass.EOF; t = tokeniser.nextToken(), tokens++) 
+                	buffered.println(t);
+                lexingErrors = tokeniser.getErrorCount();
+            }
+            stats.end();
+            stats.count(Counter.TOKENS, tokens);
+            if (lexingErrors == 0)
+        		buffered.println("Lexing: pass");
     	    else
-        		System.out.println("Lexing: failed ("+tokeniser.getErrorCount()+" errors)");
-            System.exit(tokeniser.getErrorCount() == 0 ? PASS : LEXER_FAIL);
+        		buffered.println("Lexing: failed ("+lexingErrors+" errors)");
+            buffered.flush();
+            return lexingErrors == 0 ? PASS : LEXER_FAIL;
         } else if (mode == Mode.PARSER) {
-		    Parser parser = new Parser(tokeniser);
-		    parser.parse();
+		    Parser parser = newParser(tokeniser, lexed, inputFile, pipeline, expandIncludes, timeLexing, out);
+		    parse(parser, tokeniser, stats);
 		    if (parser.getErrorCount() == 0)
-		    	System.out.println("Parsing: pass");
+		    	out.println("Parsing: pass");
 		    else
-		    	System.out.println("Parsing: failed ("+parser.getErrorCount()+" errors)");
-		    System.exit(parser.getErrorCount() == 0 ? PASS : PARSER_FAIL);
+		    	out.println("Parsing: failed ("+parser.getErrorCount()+" errors)");
+		    return parser.getErrorCount() == 0 ? PASS : PARSER_FAIL;
         }  else if (mode == Mode.AST) {
-            Parser parser = new Parser(tokeniser);
-            Program programAst = parser.parse();
+            Parser parser = newParser(tokeniser, lexed, inputFile, pipeline, expandIncludes, timeLexing, out);
+            Program programAst = parse(parser, tokeniser, stats);
+            if (parser.getErrorCount() == 0)
+                session.getDump().ast(programAst);
             if (parser.getErrorCount() == 0) {
-                System.out.println("Parsing: pass");
-                System.out.println("Printing out AST:");
-                PrintWriter writer;
-                StringWriter sw = new StringWriter();
+                out.println("Parsing: pass");
+                out.println("Printing out AST:");
+                PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out), BUFFER));
                 try {
-                    writer = new PrintWriter(sw);
                     programAst.accept(new ASTPrinter(writer));
-                    writer.flush();
-                    System.out.print(sw.toString());
-                    writer.close();
                 } catch (Exception e) {
-                    e.printStackTrace();
+                    e.printStackTrace(err);
                 }
+                writer.flush();
             } else
-                System.out.println("Parsing: failed ("+parser.getErrorCount()+" errors)");
-            System.exit(parser.getErrorCount() == 0 ? PASS : PARSER_FAIL);
+                out.println("Parsing: failed ("+parser.getErrorCount()+" errors)");
+            return parser.getErrorCount() == 0 ? PASS : PARSER_FAIL;
         } else if (mode == Mode.SEMANTICANALYSIS) {
-            Parser parser = new Parser(tokeniser);
-            Program programAst = parser.parse();
+            Parser parser = newParser(tokeniser, lexed, inputFile, pipeline, expandIncludes, timeLexing, out);
+            Program programAst = parse(parser, tokeniser, stats);
+            if (parser.getErrorCount() == 0)
+                session.getDump().ast(programAst);
             if (parser.getErrorCount() == 0) {
-                SemanticAnalyzer sem = new SemanticAnalyzer();
+                SemanticAnalyzer sem = new SemanticAnalyzer(session);
+                stats.begin(Phase.SEMANTIC_ANALYSIS);
                 int errors = sem.analyze(programAst);
+                stats.end();
                 if (errors == 0)
-                    System.out.println("Semantic analysis: Pass");
+                    out.println("Semantic analysis: Pass");
                 else
-                    System.out.println("Semantic analysis: Failed (" + errors + ")");
-                System.exit(errors == 0 ? PASS : SEM_FAIL);
+                    out.println("Semantic analysis: Failed (" + errors + ")");
+                return errors == 0 ? PASS : SEM_FAIL;
             } else
-                System.exit(PARSER_FAIL);
+                return PARSER_FAIL;
         } else if (mode == Mode.GEN) {
-            Parser parser = new Parser(tokeniser);
-            Program programAst = parser.parse();
+            Parser parser = newParser(tokeniser, lexed, inputFile, pipeline, expandIncludes, timeLexing, out);
+            Program programAst = parse(parser, tokeniser, stats);
+            if (parser.getErrorCount() == 0)
+                session.getDump().ast(programAst);
             if (parser.getErrorCount() > 0)
-                System.exit(PARSER_FAIL);
-            SemanticAnalyzer sem = new SemanticAnalyzer();
+                return PARSER_FAIL;
+            SemanticAnalyzer sem = new SemanticAnalyzer(session);
+            stats.begin(Phase.SEMANTIC_ANALYSIS);
             int errors = sem.analyze(programAst);
+            stats.end();
             if (errors > 0)
-                System.exit(SEM_FAIL);
-            CodeGenerator codegen = new CodeGenerator();
+                return SEM_FAIL;
+            CodeGenerator codegen = new CodeGenerator(session);
+            codegen.setFunctionCache(functions);
             try {
                 codegen.emitProgram(programAst, outputFile);
             } catch (FileNotFoundException e) {
-                System.out.println("File "+outputFile.toString()+" does not exist.");
-                System.exit(FILE_NOT_FOUND);
+                out.println("File "+outputName+" does not exist.");
+                return FILE_NOT_FOUND;
             }
         } else {
-        	System.exit(MODE_FAIL);
+        	return MODE_FAIL;
         }
+        return PASS;
     }
 }
\ No newline at end of file
@@ -0,0 +1,215 @@
+package ast;
+
+/**
+ * Counts the nodes of an AST, going through it as ASTPrinter does. A type is counted wherever it is
+ * written, although the parser shares the objects of equal types.
+ */
+public class ASTCounter implements ASTVisitor<Void> {
+
+    private long count = 0;
+
+    public static long count(ASTNode node) {
+        ASTCounter counter = new ASTCounter();
+        node.accept(counter);
+        return counter.count;
+    }
+
+    @Override
+    public Void visitBlock(Block b) {
+        count++;
+        for (VarDecl vd : b.varDecls)
+            vd.accept(this);
+        for (Stmt st : b.stmts)
+            st.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitFunDecl(FunDecl fd) {
+        count++;
+        fd.type.accept(this);
+        for (VarDecl vd : fd.params)
+            vd.accept(this);
+        fd.block.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitProgram(Program p) {
+        count++;
+        for (StructTypeDecl std : p.structTypeDecls)
+            std.accept(this);
+        for (VarDecl vd : p.varDecls)
+            vd.accept(this);
+        for (FunDecl fd : p.funDecls)
+            fd.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitVarDecl(VarDecl vd) {
+        count++;
+        vd.type.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitVarExpr(VarExpr v) {
+        count++;
+        return null;
+    }
+
+    @Override
+    public Void visitBaseType(BaseType bt) {
+        count++;
+        return null;
+    }
+
+    @Override
+    public Void visitStructTypeDecl(StructTypeDecl st) {
+        count++;
+        st.type.accept(this);
+        for (VarDecl varDecl : st.varDecls)
+            varDecl.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitAddressOfExpr(AddressOfExpr ao) {
+        count++;
+        ao.expr.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitArrayAccessExpr(ArrayAccessExpr aa) {
+        count++;
+        aa.array.accept(this);
+        aa.idx.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitArrayType(ArrayType at) {
+        count++;
+        at.elementType.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitAssign(Assign as) {
+        count++;
+        as.left.accept(this);
+        as.right.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitBinOp(BinOp bo) {
+        count++;
+        bo.left.accept(this);
+        bo.right.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitChrLiteral(ChrLiteral cl) {
+        count++;
+        return null;
+    }
+
+    @Override
+    public Void visitExprStmt(ExprStmt es) {
+        count++;
+        es.expr.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitFieldAccessExpr(FieldAccessExpr fa) {
+        count++;
+        fa.structure.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitFunCallExpr(FunCallExpr fc) {
+        count++;
+        for (Expr param : fc.args)
+            param.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitIf(If iff) {
+        count++;
+        iff.condition.accept(this);
+        iff.ifBranch.accept(this);
+        if (iff.elseBranch != null)
+            iff.elseBranch.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitIntLiteral(IntLiteral il) {
+        count++;
+        return null;
+    }
+
+    @Override
+    public Void visitPointerType(PointerType pt) {
+        count++;
+        pt.elementType.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitReturn(Return re) {
+        count++;
+        if (re.expr != null)
+            re.expr.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitSizeOfExpr(SizeOfExpr so) {
+        count++;
+        so.t.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitStrLiteral(StrLiteral sl) {
+        count++;
+        return null;
+    }
+
+    @Override
+    public Void visitStructType(StructType st) {
+        count++;
+        return null;
+    }
+
+    @Override
+    public Void visitTypecaseExpr(TypecastExpr tc) {
+        count++;
+        tc.t.accept(this);
+        tc.expr.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitValueAtExpr(ValueAtExpr va) {
+        count++;
+        va.expr.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitWhile(While wh) {
+        count++;
+        wh.condition.accept(this);
+        wh.stmt.accept(this);
+        return null;
+    }
+}
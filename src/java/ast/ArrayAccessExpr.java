@@ -1,7 +1,6 @@
 package ast;
 
 public class ArrayAccessExpr extends Expr {
-    public Type type;
 
     public Expr getArray() {
         return array;
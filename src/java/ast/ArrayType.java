@@ -1,8 +1,11 @@
 package ast;
 
+import java.util.Objects;
+
 public class ArrayType implements Type {
-    public Type elementType;
-    public int n;
+    public final Type elementType;
+    public final int n;
+    public int size = -1; // cached by SizeHelper
 
     public ArrayType(Type elementType, int n) {
         this.elementType = elementType;
@@ -28,4 +31,9 @@ public class ArrayType implements Type {
         ArrayType other = (ArrayType) obj;
         return other.elementType.equals(this.elementType) && this.n == other.n;
     }
+
+    @Override
+    public int hashCode() {
+        return 31 * Objects.hashCode(elementType) + n;
+    }
 }
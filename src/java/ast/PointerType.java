@@ -1,7 +1,9 @@
 package ast;
 
+import java.util.Objects;
+
 public class PointerType implements Type {
-    public Type elementType;
+    public final Type elementType;
 
     public PointerType(Type elementType) {
         this.elementType = elementType;
@@ -26,4 +28,9 @@ public class PointerType implements Type {
         PointerType other = (PointerType) obj;
         return other.elementType.equals(this.elementType);
     }
+
+    @Override
+    public int hashCode() {
+        return 31 * Objects.hashCode(elementType) + 1;
+    }
 }
@@ -7,11 +7,19 @@ public class Program implements ASTNode {
     public final List<StructTypeDecl> structTypeDecls;
     public final List<VarDecl> varDecls;
     public final List<FunDecl> funDecls;
+    // the types of the program, new types should be made there too
+    public final TypeTable types;
 
     public Program(List<StructTypeDecl> structTypeDecls, List<VarDecl> varDecls, List<FunDecl> funDecls) {
+        this(structTypeDecls, varDecls, funDecls, new TypeTable());
+    }
+
+    public Program(List<StructTypeDecl> structTypeDecls, List<VarDecl> varDecls, List<FunDecl> funDecls,
+                   TypeTable types) {
         this.structTypeDecls = structTypeDecls;
 	    this.varDecls = varDecls;
 	    this.funDecls = funDecls;
+	    this.types = types;
     }
 
     public <T> T accept(ASTVisitor<T> v) {
@@ -1,24 +1,22 @@
 package ast;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public class StructType implements Type {
     // represent a struct type (the String is the name of the declared struct type)
     public String name;
     public StructTypeDecl std;
-    public static final Map<StructType, StructTypeDecl> structMap = new HashMap<StructType, StructTypeDecl>();
+    public int size = -1; // cached by SizeHelper, once the declaration is known
 
     public StructType(String name) {
         this.name = name;
     }
 
     public StructTypeDecl getStd() {
-        return structMap.get(this);
+        // types are hash-consed, so this is the declaration of every occurrence of the type in the program
+        return std;
     }
 
     public void setStd(StructTypeDecl std) {
-        structMap.put(this, std);
+        this.std = std;
     }
 
     @Override
@@ -1,11 +1,14 @@
 package ast;
 
+import util.StructLayout;
+
 import java.util.List;
 
 public class StructTypeDecl implements ASTNode {
 
     public StructType type;
     public List<VarDecl> varDecls;
+    public StructLayout layout; // computed once, by StructLayout.of
 
     public StructTypeDecl(StructType type, List<VarDecl> varDecls) {
         this.type = type;
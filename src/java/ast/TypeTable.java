@@ -0,0 +1,68 @@
+package ast;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The types of a program, hash-consed: asking twice for the same type returns the same instance,
+ * so two types are equal exactly when they are the same object and equals() stops at its first test.
+ * The parser, the semantic analysis and the code generator all make their types through the table of
+ * the Program (Program.types), and sizes can be cached on the types themselves (see util.SizeHelper).
+ *
+ * A type with an unknown (null) part, which only comes out of erroneous programs, is not interned.
+ */
+public class TypeTable {
+
+    // pointers to the base types hold nothing specific to a program, all the tables share them
+    private static final Map<BaseType, PointerType> BASE_POINTERS = new EnumMap<>(BaseType.class);
+
+    static {
+        for (BaseType baseType : BaseType.values())
+            BASE_POINTERS.put(baseType, new PointerType(baseType));
+    }
+
+    // keyed by element type, which is itself canonical
+    private final Map<Type, PointerType> pointers = new IdentityHashMap<>();
+    private final Map<Type, Map<Integer, ArrayType>> arrays = new IdentityHashMap<>();
+    private final Map<String, StructType> structs = new HashMap<>();
+
+    /*
+     * The pointer to a base type, the same in every table.
+     */
+    public static PointerType pointerTo(BaseType elementType) {
+        return BASE_POINTERS.get(elementType);
+    }
+
+    public PointerType pointer(Type elementType) {
+        if (elementType == null)
+            return new PointerType(null);
+        if (elementType instanceof BaseType)
+            return pointerTo((BaseType) elementType);
+        return pointers.computeIfAbsent(elementType, PointerType::new);
+    }
+
+    public ArrayType array(Type elementType, int n) {
+        if (elementType == null)
+            return new ArrayType(null, n);
+        // no capturing lambda, a hit allocates nothing
+        Map<Integer, ArrayType> sizes = arrays.get(elementType);
+        if (sizes == null) {
+            sizes = new HashMap<>();
+            arrays.put(elementType, sizes);
+        }
+        ArrayType arrayType = sizes.get(n);
+        if (arrayType == null) {
+            arrayType = new ArrayType(elementType, n);
+            sizes.put(n, arrayType);
+        }
+        return arrayType;
+    }
+
+    public StructType struct(String name) {
+        if (name == null)
+            return new StructType(null);
+        return structs.computeIfAbsent(name, StructType::new);
+    }
+}
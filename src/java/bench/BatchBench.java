@@ -0,0 +1,87 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Measures how Main -batch scales with the number of threads, on the programs of the tests directory
+ * copied many times over, and checks that every number of threads gives the same output and assembly.
+ *
+ * Usage: java -cp bin bench.BatchBench [copies [max threads]]
+ * By default the tests are copied 1000 times and the threads go up to the number of processors, doubling.
+ */
+public class BatchBench {
+
+    public static void main(String[] args) throws Exception {
+        int copies = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        File[] tests = new File("tests").listFiles((dir, name) -> name.endsWith(".c"));
+        Path corpus = Files.createTempDirectory("corpus");
+        for (int c = 0; c < copies; c++) {
+            Path copy = Files.createDirectory(corpus.resolve("copy" + c));
+            for (File test : tests)
+                Files.copy(test.toPath(), copy.resolve(test.getName()));
+        }
+        int files = copies * tests.length;
+
+        String expected = null;
+        double single = 0;
+        for (int threads = 1; ; threads = Math.min(threads * 2, maxThreads)) {
+            Path out = Files.createTempDirectory("batch");
+            File stdout = File.createTempFile("batch", ".out");
+            List<String> command = new ArrayList<>(Arrays.asList(
+                    new File(System.getProperty("java.home"), "bin/java").getPath(),
+                    "-cp", System.getProperty("java.class.path"), "Main",
+                    "-batch", "-jobs", Integer.toString(threads), "-gen", out.toString(), corpus.toString()));
+            long start = System.nanoTime();
+            new ProcessBuilder(command).redirectOutput(stdout).redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start().waitFor();
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            String result = new String(Files.readAllBytes(stdout.toPath())) + assembly(out);
+            stdout.delete();
+            delete(out);
+            if (threads == 1) {
+                expected = result;
+                single = seconds;
+            }
+            System.out.printf("%d threads: %d files in %.1f s, %.1f per second, speedup %.2f, output %s%n",
+                    threads, files, seconds, files / seconds, single / seconds,
+                    result.equals(expected) ? "identical" : "DIFFERENT");
+            if (threads >= maxThreads)
+                break;
+        }
+        delete(corpus);
+    }
+
+    // the files under a directory, in path order
+    private static List<Path> walk(Path dir) throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            return walk.sorted().collect(Collectors.toList());
+        }
+    }
+
+    // the assembly files under a directory, concatenated with their names
+    private static String assembly(Path dir) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (Path path : walk(dir)) {
+            if (Files.isRegularFile(path))
+                sb.append(dir.relativize(path)).append('\n').append(new String(Files.readAllBytes(path)));
+        }
+        return sb.toString();
+    }
+
+    private static void delete(Path dir) throws IOException {
+        List<Path> paths = walk(dir);
+        for (int i = paths.size() - 1; i >= 0; i--)
+            Files.delete(paths.get(i));
+    }
+}
@@ -0,0 +1,98 @@
+package bench;
+
+import ast.Program;
+import compiler.CompilationSession;
+import gen.AllocationLocationVisitor;
+import gen.ProgramGen;
+import gen.ReturnStructVisitor;
+import gen.asm.AssemblyProgram;
+import lexer.Scanner;
+import lexer.Tokeniser;
+import parser.Parser;
+import sem.SemanticAnalyzer;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Measures the time of the code generation to virtual registers (ProgramGen), without the liveness analysis
+ * and the register allocation, on programs with many struct field accesses.
+ *
+ * Usage: java -cp bin bench.CodegenBench [inputfile ...]
+ * Without arguments, a program of nested structs with many fields, and arrays of them, is generated.
+ * The inputs must be free of semantic errors.
+ */
+public class CodegenBench {
+
+    private static final int WARMUP = 3;
+    private static final int RUNS = 10;
+    private static final int FIELDS = 96;
+    private static final int FUNCTIONS = 1_000;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            run(structs());
+        } else {
+            for (String arg : args)
+                run(new File(arg));
+        }
+    }
+
+    private static File structs() throws IOException {
+        File file = File.createTempFile("structs", ".c");
+        file.deleteOnExit();
+
+        try (PrintWriter writer = new PrintWriter(file)) {
+            writer.print("struct leaf {");
+            for (int f = 0; f < FIELDS; f++)
+                writer.print(" int f" + f + ";");
+            writer.println(" char tag; };");
+            writer.print("struct inner {");
+            for (int f = 0; f < FIELDS; f++)
+                writer.print(" int g" + f + ";");
+            writer.println(" struct leaf leaf; struct leaf leaves[4]; };");
+            writer.println("struct outer { int id; struct inner first; struct inner items[3]; struct inner last; };");
+            writer.println("struct outer world[2];");
+            for (int i = 0; i < FUNCTIONS; i++) {
+                int f = i % FIELDS;
+                writer.println("int visit" + i + "(int k) {");
+                // struct assignment only copies flat structs, the nested ones are accessed field by field
+                writer.println("    struct inner in; struct leaf l;");
+                writer.println("    l = world[k % 2].items[k % 3].leaves[k % 4];");
+                writer.println("    world[0].last.leaf.f" + f + " = world[1].items[2].g" + (FIELDS - 1 - f) + " + l.f" + (FIELDS - 1) + ";");
+                writer.println("    world[1].items[2].leaves[3].f" + f + " = world[0].first.leaf.f" + (FIELDS - 1) + " * k;");
+                writer.println("    in.g" + f + " = l.f" + f + "; in.leaves[1].tag = l.tag; world[1].first.leaf = l;");
+                writer.println("    return world[0].last.g" + (FIELDS - 1) + " + in.leaf.f" + f + " + world[k % 2].id;");
+                writer.println("}");
+            }
+            writer.println("void main() { print_i(visit0(1)); }");
+        }
+        return file;
+    }
+
+    // parsed, analysed and prepared for the code generation, as in CodeGenerator
+    private static Program prepare(File file, CompilationSession session) throws FileNotFoundException {
+        Parser parser = new Parser(new Tokeniser(new Scanner(file)));
+        Program program = parser.parse();
+        if (parser.getErrorCount() > 0 || new SemanticAnalyzer(session).analyze(program) > 0)
+            throw new IllegalArgumentException(file + " does not compile");
+        program.accept(new ReturnStructVisitor(session));
+        program.accept(new AllocationLocationVisitor());
+        return program;
+    }
+
+    private static void run(File file) throws FileNotFoundException {
+        long time = 0;
+        for (int i = 0; i < WARMUP + RUNS; i++) {
+            CompilationSession session = new CompilationSession();
+            Program program = prepare(file, session);
+            long start = System.nanoTime();
+            new ProgramGen(new AssemblyProgram(session)).visitProgram(program);
+            if (i >= WARMUP)
+                time += System.nanoTime() - start;
+        }
+        System.out.printf("%s: %d bytes, code generation %.2f ms%n", file.getName(), file.length(), time / 1e6 / RUNS);
+    }
+}
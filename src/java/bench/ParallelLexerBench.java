@@ -0,0 +1,99 @@
+package bench;
+
+import lexer.ParallelTokeniser;
+import lexer.Scanner;
+import lexer.TokenBuffer;
+import lexer.Tokeniser;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures how the ParallelTokeniser scales with the number of threads against the sequential Tokeniser,
+ * and checks that both produce the same tokens.
+ *
+ * Usage: java -Xmx4g -cp bin bench.ParallelLexerBench [maxthreads [inputfile]]
+ * maxthreads defaults to the number of processors. Without an input file, a 50 MB source is generated.
+ */
+public class ParallelLexerBench {
+
+    private static final int WARMUP = 2;
+    private static final int RUNS = 5;
+    private static final long GENERATED_SIZE = 50L * 1024 * 1024;
+
+    public static void main(String[] args) throws IOException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        File file = args.length > 1 ? new File(args[1]) : generate();
+
+        TokenBuffer expected = new Tokeniser(new Scanner(file)).tokenise();
+        double sequential = time(file, null);
+        report(file, "sequential", expected.size(), sequential, sequential);
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                TokenBuffer tokens = new ParallelTokeniser(new Scanner(file), pool).tokenise();
+                if (!same(expected, tokens))
+                    throw new AssertionError("parallel tokens differ with " + threads + " threads");
+                report(file, threads + " threads", tokens.size(), time(file, pool), sequential);
+            } finally {
+                pool.shutdown();
+            }
+            if (threads < maxThreads && threads * 2 > maxThreads)
+                threads = maxThreads / 2;
+        }
+    }
+
+    private static File generate() throws IOException {
+        File file = File.createTempFile("parallel-lexer", ".c");
+        file.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(file)) {
+            for (int i = 0; file.length() < GENERATED_SIZE; i++) {
+                writer.println("/* function " + i + ",");
+                writer.println("   spans a few lines */");
+                writer.println("int f" + i + "(int a, char *s) {");
+                writer.println("    int x; char c; // a line comment with \"quotes\" and 'ticks'");
+                writer.println("    c = '\\n'; s = \"a string with // and /* inside \\\" */\";");
+                writer.println("    while (x < " + i + ") { x = x + a * 2 - (x / 3) % 7; }");
+                writer.println("    return x;");
+                writer.println("}");
+                if (i % 1000 == 0)
+                    writer.flush();
+            }
+        }
+        return file;
+    }
+
+    private static TokenBuffer tokenise(File file, ForkJoinPool pool) throws FileNotFoundException {
+        Scanner scanner = new Scanner(file);
+        return pool == null ? new Tokeniser(scanner).tokenise() : new ParallelTokeniser(scanner, pool).tokenise();
+    }
+
+    private static double time(File file, ForkJoinPool pool) throws FileNotFoundException {
+        for (int i = 0; i < WARMUP; i++)
+            tokenise(file, pool);
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++)
+            tokenise(file, pool);
+        return (System.nanoTime() - start) / 1e9 / RUNS;
+    }
+
+    private static boolean same(TokenBuffer a, TokenBuffer b) {
+        if (a.size() != b.size())
+            return false;
+        for (int i = 0; i < a.size(); i++) {
+            if (a.tokenClass(i) != b.tokenClass(i) || a.start(i) != b.start(i) || a.end(i) != b.end(i)
+                    || a.line(i) != b.line(i) || a.column(i) != b.column(i) || !a.data(i).equals(b.data(i)))
+                return false;
+        }
+        return true;
+    }
+
+    private static void report(File file, String label, int tokens, double seconds, double sequential) {
+        System.out.printf("%s %s: %d bytes, %d tokens, %.2f ms, %.0f tokens/sec, speedup %.2f%n",
+                file.getName(), label, file.length(), tokens, seconds * 1e3, tokens / seconds, sequential / seconds);
+    }
+}
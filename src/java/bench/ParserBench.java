@@ -0,0 +1,120 @@
+package bench;
+
+import lexer.Scanner;
+import lexer.TokenBuffer;
+import lexer.Tokeniser;
+import parser.Parser;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Measures the throughput of the Parser, lexing included.
+ *
+ * Usage: java -cp bin bench.ParserBench [inputfile ...]
+ * Without arguments, two inputs are generated and parsed: a file of struct, global variable and
+ * function declarations, and a file of expression-heavy functions in the style of
+ * tests/array_complex_reduction_8.c.
+ */
+public class ParserBench {
+
+    private static final int WARMUP = 3;
+    private static final int RUNS = 10;
+    private static final int DECLS = 10_000;
+    private static final int FUNCTIONS = 2_000;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            declarations();
+            expressions();
+        } else {
+            for (String arg : args)
+                run(new File(arg));
+        }
+    }
+
+    private static void declarations() throws IOException {
+        File file = File.createTempFile("declarations", ".c");
+        file.deleteOnExit();
+
+        try (PrintWriter writer = new PrintWriter(file)) {
+            // the grammar wants all the struct declarations first, then the variables, then the functions
+            for (int i = 0; i < DECLS; i++)
+                writer.println("struct node" + i + " { int key; char name[16]; struct node" + i + " *next; };");
+            for (int i = 0; i < DECLS; i++) {
+                writer.println("int counter" + i + ";");
+                writer.println("char *label" + i + ";");
+                writer.println("struct node" + i + " table" + i + "[8];");
+            }
+            for (int i = 0; i < DECLS; i++) {
+                writer.println("int find" + i + "(struct node" + i + " *head, int key, char *name) {");
+                writer.println("    int depth; char c; struct node" + i + " *cur; int seen[4];");
+                writer.println("    cur = head;");
+                writer.println("    while (cur != 0) { if ((*cur).key == key) return depth; cur = (*cur).next; }");
+                writer.println("    return 0;");
+                writer.println("}");
+                writer.println("void reset" + i + "() { counter" + i + " = 0; }");
+            }
+        }
+
+        run(file);
+    }
+
+    private static void expressions() throws IOException {
+        File file = File.createTempFile("expressions", ".c");
+        file.deleteOnExit();
+
+        try (PrintWriter writer = new PrintWriter(file)) {
+            for (int i = 0; i < FUNCTIONS; i++) {
+                writer.println("int reduce" + i + "(int q) {");
+                writer.println("    int b[15]; int c; int n; int r; int s; int t;");
+                writer.println("    n = 4 + 4 * 2 - 32 / 8 % 3;");
+                writer.println("    s = -(-(b[q / 15] - 4 - (b[q % 15] + 3)));");
+                writer.println("    if ((q - 158) / 3 < 15 && (q - 158) % 3 == 0 || q >= 248) t = b[(q - 158) / 3];");
+                writer.println("    s = t + b[(q - 158) / 3 / 15] * b[(q - 158) / 3 % 15] + c - n;");
+                StringBuilder chain = new StringBuilder("b[0]");
+                for (int j = 1; j < 64; j++)
+                    chain.append(j % 3 == 0 ? " * " : j % 3 == 1 ? " + " : " - ").append("b[").append(j % 15).append(']');
+                writer.println("    r = " + chain + ";");
+                StringBuilder nested = new StringBuilder("q");
+                for (int j = 0; j < 32; j++)
+                    nested.insert(0, '(').append(" + ").append(j).append(')');
+                writer.println("    r = r + " + nested + ";");
+                writer.println("    return r != 0 && s <= t;");
+                writer.println("}");
+            }
+        }
+
+        run(file);
+    }
+
+    private enum Mode {
+        EAGER,       // whole AST, streaming from the tokeniser
+        PIPELINED    // whole AST, lexing on a separate thread (-pipeline)
+    }
+
+    private static int parse(File file, Mode mode) throws FileNotFoundException {
+        Tokeniser tokeniser = new Tokeniser(new Scanner(file));
+        if (mode == Mode.EAGER)
+            return new Parser(tokeniser).parse().funDecls.size();
+        return new Parser(TokenBuffer.pipelined(tokeniser)).parse().funDecls.size();
+    }
+
+    private static void run(File file) throws FileNotFoundException {
+        for (Mode mode : Mode.values()) {
+            int funDecls = 0;
+            for (int i = 0; i < WARMUP; i++)
+                funDecls = parse(file, mode);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < RUNS; i++)
+                funDecls = parse(file, mode);
+            double seconds = (System.nanoTime() - start) / 1e9 / RUNS;
+
+            System.out.printf("%s %s: %d bytes, %d functions, %.2f ms, %.1f MB/sec%n", file.getName(), mode,
+                    file.length(), funDecls, seconds * 1e3, file.length() / seconds / 1e6);
+        }
+    }
+}
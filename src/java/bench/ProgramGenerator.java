@@ -0,0 +1,244 @@
+package bench;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates valid mini-C programs of a given shape, the same program for the same seed and shape, like the
+ * machine-generated programs the compiler is fed: many functions, many locals, deeply nested while and if,
+ * long expressions and calls between the functions. Each function only calls the ones defined before it
+ * and each loop runs twice, so the programs also terminate.
+ *
+ * Usage: java -cp bin bench.ProgramGenerator [-seed n] [-functions n] [-locals n] [-statements n] [-depth n]
+ *                                            [-expression n] [-calls p]
+ * The program is printed to the standard output.
+ */
+public class ProgramGenerator {
+
+    /*
+     * The dimensions of a program which make it grow linearly.
+     */
+    public enum Dimension {
+        FUNCTIONS,  // besides main
+        LOCALS,     // int locals of each function, all assigned at its start
+        STATEMENTS, // statements of each block
+        DEPTH,      // nesting of while and if in each function
+        EXPRESSION  // binary operators of each expression
+    }
+
+    public static class Shape {
+        private final int[] sizes;
+        public final double calls; // the chance that an operand is a call
+
+        public Shape(int functions, int locals, int statements, int depth, int expression, double calls) {
+            this(new int[] { functions, locals, statements, depth, expression }, calls);
+        }
+
+        private Shape(int[] sizes, double calls) {
+            if (sizes[Dimension.FUNCTIONS.ordinal()] < 1 || sizes[Dimension.LOCALS.ordinal()] < 1)
+                throw new IllegalArgumentException("a program needs a function and a local");
+            for (int size : sizes) {
+                if (size < 0)
+                    throw new IllegalArgumentException("negative size " + size);
+            }
+            if (calls < 0 || calls > 1)
+                throw new IllegalArgumentException("call density " + calls + " is not a probability");
+            this.sizes = sizes;
+            this.calls = calls;
+        }
+
+        public int get(Dimension dimension) {
+            return sizes[dimension.ordinal()];
+        }
+
+        public Shape with(Dimension dimension, int size) {
+            int[] copy = Arrays.copyOf(sizes, sizes.length);
+            copy[dimension.ordinal()] = size;
+            return new Shape(copy, calls);
+        }
+
+        public Shape withCalls(double calls) {
+            return new Shape(sizes, calls);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (Dimension dimension : Dimension.values())
+                sb.append(dimension.name().toLowerCase()).append('=').append(get(dimension)).append(' ');
+            return sb.append("calls=").append(calls).toString();
+        }
+    }
+
+    private static final String[] ARITHMETIC = { "+", "-", "*" };
+    private static final String[] COMPARISONS = { "<", ">", "<=", ">=", "==", "!=" };
+    private static final int PARAMS = 2;
+
+    private final Shape shape;
+    private final Random random;
+    private StringBuilder sb;
+    private int function; // the one being generated, it may call the ones before it
+
+    public ProgramGenerator(Shape shape, long seed) {
+        this.shape = shape;
+        this.random = new Random(seed);
+    }
+
+    public String generate() {
+        sb = new StringBuilder();
+        for (function = 0; function < shape.get(Dimension.FUNCTIONS); function++)
+            function();
+        sb.append("void main() {\n");
+        sb.append("    print_i(f").append(shape.get(Dimension.FUNCTIONS) - 1).append("(1, 2));\n");
+        sb.append("}\n");
+        String program = sb.toString();
+        sb = null;
+        return program;
+    }
+
+    private void function() {
+        sb.append("int f").append(function).append('(');
+        for (int p = 0; p < PARAMS; p++)
+            sb.append(p == 0 ? "" : ", ").append("int p").append(p);
+        sb.append(") {\n");
+
+        int locals = shape.get(Dimension.LOCALS);
+        int depth = shape.get(Dimension.DEPTH);
+        for (int l = 0; l < locals; l++)
+            sb.append("    int x").append(l).append(";\n");
+        // a counter for each level of loops, never assigned by the other statements
+        for (int d = 0; d < depth; d += 2)
+            sb.append("    int c").append(d).append(";\n");
+        for (int l = 0; l < locals; l++)
+            sb.append("    x").append(l).append(" = p").append(l % PARAMS).append(" + ").append(l).append(";\n");
+
+        block(0, 1);
+        indent(1).append("return ");
+        expression(shape.get(Dimension.EXPRESSION));
+        sb.append(";\n");
+        sb.append("}\n");
+    }
+
+    // the statements of a block at the given level of nesting, one of them nests further
+    private void block(int level, int indent) {
+        int statements = shape.get(Dimension.STATEMENTS);
+        int nested = level < shape.get(Dimension.DEPTH) ? random.nextInt(statements + 1) : -1;
+        for (int s = 0; s <= statements; s++) {
+            if (s == nested)
+                compound(level, indent);
+            else if (s < statements)
+                simple(indent);
+        }
+    }
+
+    private void compound(int level, int indent) {
+        if (level % 2 == 0) {
+            indent(indent).append('c').append(level).append(" = 0;\n");
+            indent(indent).append("while (c").append(level).append(" < 2) {\n");
+            block(level + 1, indent + 1);
+            indent(indent + 1).append('c').append(level).append(" = c").append(level).append(" + 1;\n");
+            indent(indent).append("}\n");
+        } else {
+            indent(indent).append("if (");
+            condition();
+            sb.append(") {\n");
+            block(level + 1, indent + 1);
+            indent(indent).append("} else {\n");
+            simple(indent + 1);
+            indent(indent).append("}\n");
+        }
+    }
+
+    private void simple(int indent) {
+        indent(indent);
+        if (random.nextInt(8) == 0) {
+            sb.append("print_i(");
+            expression(shape.get(Dimension.EXPRESSION));
+            sb.append(')');
+        } else {
+            sb.append('x').append(random.nextInt(shape.get(Dimension.LOCALS))).append(" = ");
+            expression(shape.get(Dimension.EXPRESSION));
+        }
+        sb.append(";\n");
+    }
+
+    private void condition() {
+        int operators = shape.get(Dimension.EXPRESSION) / 2;
+        expression(operators);
+        sb.append(' ').append(COMPARISONS[random.nextInt(COMPARISONS.length)]).append(' ');
+        expression(operators);
+    }
+
+    // a random tree of the given number of binary operators
+    private void expression(int operators) {
+        if (operators == 0) {
+            operand();
+            return;
+        }
+        int left = random.nextInt(operators);
+        sb.append('(');
+        expression(left);
+        sb.append(' ').append(ARITHMETIC[random.nextInt(ARITHMETIC.length)]).append(' ');
+        expression(operators - 1 - left);
+        sb.append(')');
+    }
+
+    private void operand() {
+        if (function > 0 && random.nextDouble() < shape.calls) {
+            sb.append('f').append(random.nextInt(function)).append('(');
+            for (int p = 0; p < PARAMS; p++) {
+                sb.append(p == 0 ? "" : ", ");
+                variable();
+            }
+            sb.append(')');
+        } else if (random.nextInt(4) == 0) {
+            sb.append(random.nextInt(100));
+        } else {
+            variable();
+        }
+    }
+
+    private void variable() {
+        if (random.nextInt(8) == 0)
+            sb.append('p').append(random.nextInt(PARAMS));
+        else
+            sb.append('x').append(random.nextInt(shape.get(Dimension.LOCALS)));
+    }
+
+    private StringBuilder indent(int indent) {
+        for (int i = 0; i < indent; i++)
+            sb.append("    ");
+        return sb;
+    }
+
+    public static void main(String[] args) {
+        Shape shape = new Shape(10, 8, 4, 3, 6, 0.05);
+        long seed = 0;
+        for (int i = 0; i < args.length; i++) {
+            if (i + 1 == args.length)
+                usage();
+            String arg = args[i];
+            String value = args[++i];
+            try {
+                if (arg.equals("-seed"))
+                    seed = Long.parseLong(value);
+                else if (arg.equals("-calls"))
+                    shape = shape.withCalls(Double.parseDouble(value));
+                else if (arg.startsWith("-"))
+                    shape = shape.with(Dimension.valueOf(arg.substring(1).toUpperCase()), Integer.parseInt(value));
+                else
+                    usage();
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                usage();
+            }
+        }
+        System.out.print(new ProgramGenerator(shape, seed).generate());
+    }
+
+    private static void usage() {
+        System.out.println("Usage: java -cp bin bench.ProgramGenerator [-seed n] [-functions n] [-locals n] [-statements n]");
+        System.out.println("                                           [-depth n] [-expression n] [-calls p]");
+        System.exit(-1);
+    }
+}
@@ -0,0 +1,206 @@
+package bench;
+
+import bench.ProgramGenerator.Dimension;
+import bench.ProgramGenerator.Shape;
+import compiler.CompilationSession;
+import compiler.CompilationStats;
+import compiler.CompilationStats.Counter;
+import compiler.CompilationStats.Phase;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * How each phase grows with the size of the program: for each dimension of ProgramGenerator.Shape, compiles
+ * generated programs of doubling size, from a small program in every other dimension, and fits the growth
+ * exponent of the time of each phase against the number of tokens, by least squares over log time and log
+ * tokens. Near 1 the phase is linear, near 2 quadratic. The compiler is warmed up on the BASE program first,
+ * so that the smallest sizes are not timed in the interpreter.
+ *
+ * Fails if a generated program does not compile, or if the exponent of a phase is over its baseline, the
+ * exponent measured on this tree, by more than the slack: a phase which has become slower to scale. With
+ * -max, every phase is held to the given exponent instead.
+ *
+ * Usage: java -cp bin bench.ScalingBench [-seed n] [-steps n] [-slack s | -max exponent] [dimension ...]
+ * Without dimensions, every one of them is scaled. The doubling starts from the sizes of BASE.
+ */
+public class ScalingBench {
+
+    private static final Shape BASE = new Shape(4, 8, 4, 2, 4, 0.05);
+    private static final int WARMUP = 5;
+    private static final int REPEATS = 3;
+    // the phases shorter than this at the largest size are left out, too noisy to fit
+    private static final long MIN_NANOS = 10_000_000;
+
+    // the exponent of a phase which scales linearly, and how far over its baseline a phase may measure
+    private static final double LINEAR = 1.0;
+    private static final double SLACK = 0.5;
+    // the superlinear exponents measured on this tree: the liveness sets are recomputed over the whole CFG of
+    // a function until they settle, and the interference graph is built from them, so both grow with the
+    // length of a function and with its variables, and not with the number of functions
+    private static final Map<Dimension, Map<Phase, Double>> BASELINE = new EnumMap<>(Dimension.class);
+
+    static {
+        baseline(Dimension.LOCALS, 3.2, 4.6);
+        baseline(Dimension.STATEMENTS, 2.4, 3.1);
+        baseline(Dimension.DEPTH, 2.1, 3.6);
+        baseline(Dimension.EXPRESSION, 2.3, 3.6);
+    }
+    // the backend recurses along the CFG, long functions need a deep stack
+    private static final long STACK = 1L << 30;
+
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    public static void main(String[] args) throws InterruptedException {
+        long seed = 0;
+        int steps = 4;
+        double slack = SLACK;
+        double max = Double.NaN;
+        List<Dimension> dimensions = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-seed") && i + 1 < args.length)
+                    seed = Long.parseLong(args[++i]);
+                else if (args[i].equals("-steps") && i + 1 < args.length)
+                    steps = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-slack") && i + 1 < args.length)
+                    slack = Double.parseDouble(args[++i]);
+                else if (args[i].equals("-max") && i + 1 < args.length)
+                    max = Double.parseDouble(args[++i]);
+                else
+                    dimensions.add(Dimension.valueOf(args[i].toUpperCase()));
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println("Usage: java -cp bin bench.ScalingBench [-seed n] [-steps n] [-slack s | -max exponent] "
+                    + "[dimension ...]");
+            System.exit(-1);
+        }
+        if (dimensions.isEmpty())
+            dimensions.addAll(List.of(Dimension.values()));
+
+        long seed0 = seed;
+        int steps0 = steps;
+        double slack0 = slack;
+        double max0 = max;
+        int[] failures = { 0 };
+        Thread thread = new Thread(null, () -> {
+            try {
+                String warmup = new ProgramGenerator(BASE, seed0).generate();
+                for (int i = 0; i < WARMUP; i++)
+                    compile(warmup, Dimension.FUNCTIONS, BASE.get(Dimension.FUNCTIONS));
+                for (Dimension dimension : dimensions)
+                    failures[0] += scale(dimension, seed0, steps0, slack0, max0);
+            } catch (IllegalStateException e) {
+                System.out.println(e.getMessage());
+                System.exit(1);
+            }
+        }, "scaling", STACK);
+        thread.start();
+        thread.join();
+
+        if (failures[0] > 0) {
+            System.out.println(failures[0] + " phases grow faster than " + (Double.isNaN(max)
+                    ? "their baseline exponent + " + slack : "n^" + max));
+            System.exit(1);
+        }
+    }
+
+    private static void baseline(Dimension dimension, double liveness, double interference) {
+        Map<Phase, Double> exponents = new EnumMap<>(Phase.class);
+        exponents.put(Phase.LIVENESS, liveness);
+        exponents.put(Phase.INTERFERENCE, interference);
+        BASELINE.put(dimension, exponents);
+    }
+
+    // the largest exponent the phase may measure when the dimension is scaled
+    private static double limit(Dimension dimension, Phase phase, double slack, double max) {
+        if (!Double.isNaN(max))
+            return max;
+        return BASELINE.getOrDefault(dimension, Map.of()).getOrDefault(phase, LINEAR) + slack;
+    }
+
+    // returns the number of phases over their limit
+    private static int scale(Dimension dimension, long seed, int steps, double slack, double max) {
+        System.out.println(dimension.name().toLowerCase() + ", from " + BASE);
+        double[] tokens = new double[steps];
+        Map<Phase, double[]> times = new EnumMap<>(Phase.class);
+        for (Phase phase : Phase.values())
+            times.put(phase, new double[steps]);
+
+        System.out.printf("%8s %8s", "size", "tokens");
+        for (Phase phase : Phase.values())
+            System.out.printf(" %12s", shortName(phase));
+        System.out.println();
+
+        int size = Math.max(1, BASE.get(dimension));
+        for (int s = 0; s < steps; s++, size *= 2) {
+            String program = new ProgramGenerator(BASE.with(dimension, size), seed).generate();
+            for (int r = 0; r < REPEATS; r++) {
+                CompilationStats stats = compile(program, dimension, size);
+                tokens[s] = stats.get(Counter.TOKENS);
+                for (Phase phase : Phase.values()) {
+                    double[] t = times.get(phase);
+                    t[s] = r == 0 ? stats.nanos(phase) : Math.min(t[s], stats.nanos(phase));
+                }
+            }
+            System.out.printf("%8d %8.0f", size, tokens[s]);
+            for (Phase phase : Phase.values())
+                System.out.printf(" %12.2f", times.get(phase)[s] / 1e6);
+            System.out.println();
+        }
+
+        int failures = 0;
+        System.out.printf("%17s", "exponent");
+        for (Phase phase : Phase.values()) {
+            double[] t = times.get(phase);
+            if (t[steps - 1] < MIN_NANOS) {
+                System.out.printf(" %12s", "-");
+                continue;
+            }
+            double exponent = slope(tokens, t);
+            boolean fails = exponent > limit(dimension, phase, slack, max);
+            if (fails)
+                failures++;
+            System.out.printf(" %11.2f%s", exponent, fails ? "!" : " ");
+        }
+        System.out.println();
+        System.out.println();
+        return failures;
+    }
+
+    private static CompilationStats compile(String program, Dimension dimension, int size) {
+        CompilationSession session = new CompilationSession(DISCARD, DISCARD);
+        if (session.compile(program).status != CompilationSession.PASS)
+            throw new IllegalStateException("the program generated with " + dimension.name().toLowerCase() + " "
+                    + size + " does not compile");
+        return session.getStats();
+    }
+
+    // the slope of the least squares line through (log x, log y)
+    private static double slope(double[] x, double[] y) {
+        int n = x.length;
+        double sx = 0, sy = 0, sxx = 0, sxy = 0;
+        for (int i = 0; i < n; i++) {
+            double lx = Math.log(x[i]);
+            double ly = Math.log(Math.max(y[i], 1));
+            sx += lx;
+            sy += ly;
+            sxx += lx * lx;
+            sxy += lx * ly;
+        }
+        return (n * sxy - sx * sy) / (n * sxx - sx * sx);
+    }
+
+    private static String shortName(Phase phase) {
+        switch (phase) {
+            case SEMANTIC_ANALYSIS:   return "semantic";
+            case CODE_GENERATION:     return "codegen";
+            case REGISTER_ALLOCATION: return "regalloc";
+            default:                  return phase.name().toLowerCase();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package bench;
+
+import ast.Program;
+import lexer.Scanner;
+import lexer.Tokeniser;
+import parser.Parser;
+import sem.SemanticAnalyzer;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the time of the semantic analysis alone, and the bytes it allocates, in a single pass
+ * against the pipeline of visitors.
+ *
+ * Usage: java -cp bin bench.SemanticBench [inputfile ...]
+ * Without arguments, three programs are generated: one of structs, globals and expression-heavy functions,
+ * one of deeply nested blocks shadowing each other's variables, and one full of pointer and array types.
+ * The inputs should be free of semantic errors, the error reports are not silenced.
+ */
+public class SemanticBench {
+
+    private static final int WARMUP = 3;
+    private static final int RUNS = 10;
+    private static final int FUNCTIONS = 5_000;
+    private static final int NESTED_FUNCTIONS = 500;
+    private static final int DEPTH = 64;
+    private static final int POINTER_FUNCTIONS = 3_000;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            run(generate());
+            run(nested());
+            run(pointers());
+        } else {
+            for (String arg : args)
+                run(new File(arg));
+        }
+    }
+
+    private static File generate() throws IOException {
+        File file = File.createTempFile("semantic", ".c");
+        file.deleteOnExit();
+
+        try (PrintWriter writer = new PrintWriter(file)) {
+            for (int i = 0; i < FUNCTIONS / 10; i++)
+                writer.println("struct node" + i + " { int key; char tag; int values[8]; struct node" + i + " *next; };");
+            for (int i = 0; i < FUNCTIONS / 10; i++)
+                writer.println("int total" + i + "; char mark" + i + "; struct node" + i + " head" + i + ";");
+            for (int i = 0; i < FUNCTIONS; i++) {
+                int s = i / 10;
+                writer.println("int walk" + i + "(struct node" + s + " *n, int limit, char *name) {");
+                writer.println("    int depth; int acc[16]; char c; struct node" + s + " local;");
+                writer.println("    depth = 0; c = 'x'; local = head" + s + ";");
+                writer.println("    while (depth < limit && n != (struct node" + s + " *) mcmalloc(sizeof(struct node" + s + "))) {");
+                writer.println("        acc[depth % 16] = (*n).key * 3 + (*n).values[depth % 8] - local.values[1] / 2;");
+                writer.println("        if ((*n).tag == c || name[depth] == 'z') { total" + s + " = total" + s + " + acc[0]; }");
+                writer.println("        else { mark" + s + " = (*n).tag; c = name[0]; }");
+                writer.println("        n = (*n).next; depth = depth + 1;");
+                writer.println("    }");
+                writer.println("    print_i(acc[0] + acc[1] * acc[2] - (int) c);");
+                writer.println("    return depth + head" + s + ".key;");
+                writer.println("}");
+            }
+        }
+        return file;
+    }
+
+    private static File nested() throws IOException {
+        File file = File.createTempFile("nested", ".c");
+        file.deleteOnExit();
+
+        try (PrintWriter writer = new PrintWriter(file)) {
+            writer.println("int g0; int g1; int g2; int g3;");
+            for (int i = 0; i < NESTED_FUNCTIONS; i++) {
+                writer.println("int nest" + i + "(int p) {");
+                writer.println("    int v0; int v1;");
+                writer.println("    v0 = p; v1 = g0;");
+                for (int d = 1; d <= DEPTH; d++) {
+                    // every block declares a variable of its own and shadows one of the enclosing block
+                    writer.println("    if (v0 < " + d + ") { int v" + (d + 1) + "; int v" + (d - 1) + ";");
+                    writer.println("    v" + (d - 1) + " = v" + d + " + g" + (d % 4) + "; v" + (d + 1) + " = v" + (d - 1) + " * p;");
+                }
+                for (int d = DEPTH; d >= 1; d--)
+                    writer.println("    v" + d + " = v" + (d + 1) + "; }");
+                writer.println("    return v0 + v1;");
+                writer.println("}");
+            }
+        }
+        return file;
+    }
+
+    private static File pointers() throws IOException {
+        File file = File.createTempFile("pointers", ".c");
+        file.deleteOnExit();
+
+        try (PrintWriter writer = new PrintWriter(file)) {
+            writer.println("struct cell { int value; char name[12]; struct cell *next; };");
+            for (int i = 0; i < POINTER_FUNCTIONS; i++) {
+                writer.println("int scan" + i + "(int *p, char *s, struct cell *c, int *a) {");
+                writer.println("    int *q; int *r; char *t; char buf[32]; struct cell *d; struct cell cells[4];");
+                writer.println("    q = &a[" + (i % 8) + "]; r = &(*q); t = (char *) buf; d = &cells[1];");
+                writer.println("    if (r == p || &a[1] != q || s == (char *) \"needle" + i + "\") { *q = *r + *p; }");
+                writer.println("    while (d != (*c).next && (*d).next != c) { d = (*d).next; t = &buf[(*d).value % 32]; }");
+                writer.println("    print_s((char *) \"visited\"); print_s(t); print_s(&(*c).name[0]);");
+                writer.println("    cells[2].next = &cells[3]; (*cells[2].next).value = *(&a[2]) + sizeof(struct cell *);");
+                writer.println("    return *(&a[*q % 8]);");
+                writer.println("}");
+            }
+        }
+        return file;
+    }
+
+    private static Program parse(File file) throws FileNotFoundException {
+        Parser parser = new Parser(new Tokeniser(new Scanner(file)));
+        Program program = parser.parse();
+        if (parser.getErrorCount() > 0)
+            throw new IllegalArgumentException(file + " does not parse");
+        return program;
+    }
+
+    private static long allocated() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // returns the time and the bytes allocated of one analysis
+    private static double[] measure(File file, boolean singlePass) throws FileNotFoundException {
+        long time = 0;
+        long bytes = 0;
+        for (int i = 0; i < WARMUP + RUNS; i++) {
+            Program program = parse(file);
+            long allocated = allocated();
+            long start = System.nanoTime();
+            new SemanticAnalyzer(singlePass).analyze(program);
+            if (i >= WARMUP) {
+                time += System.nanoTime() - start;
+                bytes += allocated() - allocated;
+            }
+        }
+        return new double[] { time / 1e9 / RUNS, (double) bytes / RUNS };
+    }
+
+    private static void run(File file) throws FileNotFoundException {
+        double[] passes = measure(file, false);
+        double[] single = measure(file, true);
+        System.out.printf("%s: %d bytes, visitors %.2f ms %.1f MB, single pass %.2f ms %.1f MB, speedup %.2f%n",
+                file.getName(), file.length(), passes[0] * 1e3, passes[1] / 1e6, single[0] * 1e3, single[1] / 1e6,
+                passes[0] / single[0]);
+    }
+}
@@ -0,0 +1,146 @@
+package bench;
+
+import compiler.CompileClient;
+import compiler.CompileServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares compiling files with a new JVM each, as a build runs Main, to sending them to a CompileServer:
+ * from a new client JVM each (Main -client), then from this JVM, one request at a time and concurrently.
+ * The assembly produced through the server is checked against the one of the new JVMs.
+ *
+ * Usage: java -cp bin bench.ServerBench [file or directory ...]
+ * Without arguments, the programs of the tests directory are compiled.
+ */
+public class ServerBench {
+
+    private static final int PORT = CompileServer.DEFAULT_PORT + 1;
+    private static final int ROUNDS = 10;
+    private static final int CLIENTS = Math.max(2, Runtime.getRuntime().availableProcessors()) * 2;
+
+    public static void main(String[] args) throws Exception {
+        List<File> files = new ArrayList<>();
+        for (String arg : args.length == 0 ? new String[] { "tests" } : args) {
+            File file = new File(arg).getAbsoluteFile();
+            if (file.isDirectory()) {
+                File[] sources = file.listFiles((dir, name) -> name.endsWith(".c"));
+                Arrays.sort(sources);
+                files.addAll(Arrays.asList(sources));
+            } else {
+                files.add(file);
+            }
+        }
+        File out = Files.createTempDirectory("server").toFile();
+
+        // the assembly of each file, or null if it does not compile
+        byte[][] expected = new byte[files.size()][];
+        long start = System.nanoTime();
+        for (int i = 0; i < files.size(); i++)
+            expected[i] = process(files.get(i), out, false);
+        report("new JVM per file", files.size(), System.nanoTime() - start, 0);
+
+        Process server = new ProcessBuilder(java("-server", "-port", Integer.toString(PORT)))
+                .redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        while (CompileClient.run(PORT, new String[0], out, OutputStream.nullOutputStream(),
+                OutputStream.nullOutputStream()) == CompileClient.NO_SERVER)
+            Thread.sleep(50); // until the server listens
+        try {
+            int mismatches = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < files.size(); i++) {
+                if (!Arrays.equals(process(files.get(i), out, true), expected[i]))
+                    mismatches++;
+            }
+            report("new client JVM per file", files.size(), System.nanoTime() - start, mismatches);
+
+            // warms the server up before it is timed from this JVM
+            compileAll(files, expected, out, 0, 1);
+
+            start = System.nanoTime();
+            mismatches = 0;
+            for (int r = 0; r < ROUNDS; r++)
+                mismatches += compileAll(files, expected, out, 0, 1);
+            report("1 client", files.size() * ROUNDS, System.nanoTime() - start, mismatches);
+
+            ExecutorService pool = Executors.newFixedThreadPool(CLIENTS);
+            try {
+                start = System.nanoTime();
+                List<Future<Integer>> results = new ArrayList<>();
+                for (int t = 0; t < CLIENTS; t++) {
+                    int first = t;
+                    results.add(pool.submit(() -> {
+                        int m = 0;
+                        for (int r = 0; r < ROUNDS; r++)
+                            m += compileAll(files, expected, out, first, CLIENTS);
+                        return m;
+                    }));
+                }
+                mismatches = 0;
+                for (Future<Integer> result : results)
+                    mismatches += result.get();
+                report(CLIENTS + " clients", files.size() * ROUNDS, System.nanoTime() - start, mismatches);
+            } finally {
+                pool.shutdown();
+            }
+        } finally {
+            CompileClient.stop(PORT);
+            server.waitFor();
+        }
+    }
+
+    // compiles in a new JVM, through the server if client is set, and returns the assembly
+    private static byte[] process(File file, File out, boolean client) throws IOException, InterruptedException {
+        File output = new File(out, file.getName() + (client ? ".client.s" : ".s"));
+        List<String> command = java();
+        if (client)
+            command.addAll(Arrays.asList("-client", "-port", Integer.toString(PORT)));
+        command.addAll(Arrays.asList("-gen", file.getPath(), output.getPath()));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        return process.waitFor() == 0 ? read(output) : null;
+    }
+
+    // the command line running Main in a new JVM with the given arguments
+    private static List<String> java(String... args) {
+        List<String> command = new ArrayList<>(Arrays.asList(
+                new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", System.getProperty("java.class.path"), "Main"));
+        command.addAll(Arrays.asList(args));
+        return command;
+    }
+
+    // compiles every step-th file from the first one, returns the number of outputs that differ
+    private static int compileAll(List<File> files, byte[][] expected, File out, int first, int step) throws IOException {
+        int mismatches = 0;
+        for (int i = first; i < files.size(); i += step) {
+            File output = new File(out, files.get(i).getName() + "." + first + ".s");
+            String[] command = { "-gen", files.get(i).getPath(), output.getPath() };
+            int status = CompileClient.run(PORT, command, out, OutputStream.nullOutputStream(),
+                    OutputStream.nullOutputStream());
+            if (!Arrays.equals(status == 0 ? read(output) : null, expected[i]))
+                mismatches++;
+        }
+        return mismatches;
+    }
+
+    private static byte[] read(File file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        file.delete();
+        return bytes;
+    }
+
+    private static void report(String name, int compilations, long nanos, int mismatches) {
+        System.out.printf("%s: %d compilations in %.0f ms, %.1f per second, %d outputs differ%n",
+                name, compilations, nanos / 1e6, compilations / (nanos / 1e9), mismatches);
+    }
+}
@@ -0,0 +1,105 @@
+package bench;
+
+import compiler.CompilationSession;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compiles the same programs over and over in one JVM, one CompilationSession per compilation, first on
+ * a single thread then on several, and checks that every compilation gives the same assembly as the first.
+ *
+ * Usage: java -cp bin bench.SessionBench [file or directory ...]
+ * Without arguments, the programs of the tests directory are compiled.
+ */
+public class SessionBench {
+
+    private static final int ROUNDS = 10;
+    private static final int THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    public static void main(String[] args) throws Exception {
+        List<String> sources = new ArrayList<>();
+        for (String arg : args.length == 0 ? new String[] { "tests" } : args)
+            read(new File(arg), sources);
+
+        // the assembly of each program compiled first, or null if it does not compile
+        String[] expected = new String[sources.size()];
+        for (int i = 0; i < expected.length; i++)
+            expected[i] = compile(sources.get(i));
+
+        long start = System.nanoTime();
+        int mismatches = 0;
+        for (int r = 0; r < ROUNDS; r++)
+            mismatches += compileAll(sources, expected, 0, 1);
+        report("1 thread", sources.size(), System.nanoTime() - start, mismatches);
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            start = System.nanoTime();
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int first = t;
+                results.add(pool.submit(() -> {
+                    int m = 0;
+                    for (int r = 0; r < ROUNDS; r++)
+                        m += compileAll(sources, expected, first, THREADS);
+                    return m;
+                }));
+            }
+            mismatches = 0;
+            for (Future<Integer> result : results)
+                mismatches += result.get();
+            report(THREADS + " threads", sources.size(), System.nanoTime() - start, mismatches);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void read(File file, List<String> sources) throws IOException {
+        if (file.isDirectory()) {
+            File[] files = file.listFiles((dir, name) -> name.endsWith(".c"));
+            Arrays.sort(files);
+            for (File f : files)
+                sources.add(new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8));
+        } else {
+            sources.add(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String compile(String source) {
+        try {
+            return new CompilationSession(DISCARD, DISCARD).compile(source).assembly;
+        } catch (RuntimeException | StackOverflowError e) {
+            // the code generator does not cope with every valid program
+            return null;
+        }
+    }
+
+    // compiles every step-th program from the first one, returns the number of outputs that differ
+    private static int compileAll(List<String> sources, String[] expected, int first, int step) {
+        int mismatches = 0;
+        for (int i = first; i < sources.size(); i += step) {
+            if (!Objects.equals(compile(sources.get(i)), expected[i]))
+                mismatches++;
+        }
+        return mismatches;
+    }
+
+    private static void report(String name, int programs, long nanos, int mismatches) {
+        System.out.printf("%s: %d compilations in %.0f ms, %.0f per second, %d outputs differ%n",
+                name, programs * ROUNDS, nanos / 1e6, programs * ROUNDS / (nanos / 1e9), mismatches);
+    }
+}
@@ -0,0 +1,170 @@
+package bench;
+
+import compiler.CompilationSession;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The time to the first byte of assembly of small compiles, where starting the JVM and loading the classes of
+ * the compiler dominate: with a new JVM per file as a build runs Main, with a new JVM mapping the classes from
+ * the class-data sharing archive of ant cds, and in this JVM once it is warm. The new JVMs write the assembly
+ * to their standard output, which is timed until its first byte, flushed with the first function, and until
+ * the JVM exits; in this JVM, CompilationSession.compile returns the whole of it at once. The assembly of the
+ * new JVMs is checked against the one of this JVM.
+ *
+ * Usage: java -cp bin bench.StartupBench [-rounds n] [file or directory ...]
+ * Without files, the programs of the tests directory which compile are used. The archive is looked for in
+ * bin-cds, it is skipped if there is none. The new JVMs write to /dev/stdout, this runs on Unix only.
+ */
+public class StartupBench {
+
+    private static final File CDS_JAR = new File("bin-cds", "minic.jar");
+    private static final File CDS_ARCHIVE = new File("bin-cds", "minic.jsa");
+    private static final int WARMUP = 20;
+
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    public static void main(String[] args) throws Exception {
+        int rounds = 3;
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-rounds") && i + 1 < args.length) {
+                rounds = Integer.parseInt(args[++i]);
+                continue;
+            }
+            File file = new File(args[i]);
+            if (file.isDirectory())
+                files.addAll(sources(file));
+            else
+                files.add(file);
+        }
+        if (files.isEmpty())
+            files.addAll(sources(new File("tests")));
+
+        // the assembly of each file, the files which do not compile are left out
+        List<File> compiled = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (File file : files) {
+            String assembly = compile(read(file));
+            if (assembly != null) {
+                compiled.add(file);
+                expected.add(assembly);
+            }
+        }
+        System.out.println(compiled.size() + " files, " + rounds + " rounds");
+
+        List<String> jvm = java("-cp", System.getProperty("java.class.path"));
+        time("new JVM", jvm, compiled, expected, rounds);
+        if (CDS_ARCHIVE.isFile()) {
+            // -Xshare:on fails rather than silently loading the classes if the archive does not match
+            List<String> cds = java("-XX:SharedArchiveFile=" + CDS_ARCHIVE.getAbsolutePath(), "-Xshare:on",
+                    "-cp", CDS_JAR.getAbsolutePath());
+            time("new JVM, CDS", cds, compiled, expected, rounds);
+        } else {
+            System.out.println("new JVM, CDS: no archive in " + CDS_ARCHIVE.getParent() + ", build it with ant cds");
+        }
+
+        List<String> sources = new ArrayList<>();
+        for (File file : compiled)
+            sources.add(read(file));
+        for (int r = 0; r < WARMUP; r++) {
+            for (String source : sources)
+                compile(source);
+        }
+        long[] nanos = new long[compiled.size() * rounds];
+        int mismatches = 0;
+        for (int r = 0; r < rounds; r++) {
+            for (int i = 0; i < sources.size(); i++) {
+                long start = System.nanoTime();
+                String assembly = compile(sources.get(i));
+                nanos[r * sources.size() + i] = System.nanoTime() - start;
+                if (!expected.get(i).equals(assembly))
+                    mismatches++;
+            }
+        }
+        report("in-process, warm", nanos, nanos, mismatches);
+    }
+
+    // compiles each file in a new JVM started with the command, rounds times
+    private static void time(String name, List<String> command, List<File> files, List<String> expected,
+                             int rounds) throws IOException, InterruptedException {
+        long[] firstByte = new long[files.size() * rounds];
+        long[] exit = new long[files.size() * rounds];
+        int mismatches = 0;
+        for (int r = 0; r < rounds; r++) {
+            for (int i = 0; i < files.size(); i++) {
+                List<String> run = new ArrayList<>(command);
+                run.addAll(Arrays.asList("Main", "-gen", files.get(i).getPath(), "/dev/stdout"));
+                long start = System.nanoTime();
+                Process process = new ProcessBuilder(run).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+                InputStream out = process.getInputStream();
+                int first = out.read();
+                firstByte[r * files.size() + i] = System.nanoTime() - start;
+                byte[] rest = out.readAllBytes();
+                int status = process.waitFor();
+                exit[r * files.size() + i] = System.nanoTime() - start;
+
+                byte[] assembly = new byte[first < 0 ? 0 : rest.length + 1];
+                if (first >= 0) {
+                    assembly[0] = (byte) first;
+                    System.arraycopy(rest, 0, assembly, 1, rest.length);
+                }
+                if (status != 0 || !expected.get(i).equals(new String(assembly, Charset.defaultCharset())))
+                    mismatches++;
+            }
+        }
+        report(name, firstByte, exit, mismatches);
+    }
+
+    // the assembly, or null if the program does not compile
+    private static String compile(String source) {
+        try {
+            CompilationSession.Result result = new CompilationSession(DISCARD, DISCARD).compile(source);
+            return result.status == CompilationSession.PASS ? result.assembly : null;
+        } catch (RuntimeException | StackOverflowError e) {
+            return null; // the code generator does not cope with every valid program
+        }
+    }
+
+    // the java of this JVM with the options
+    private static List<String> java(String... options) {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.addAll(Arrays.asList(options));
+        return command;
+    }
+
+    private static List<File> sources(File dir) {
+        File[] sources = dir.listFiles((d, name) -> name.endsWith(".c"));
+        if (sources == null)
+            return List.of();
+        Arrays.sort(sources);
+        return Arrays.asList(sources);
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), Charset.defaultCharset()); // as Main reads it
+    }
+
+    private static void report(String name, long[] firstByte, long[] exit, int mismatches) {
+        System.out.printf("%-18s first byte: median %7.1f ms, max %7.1f ms   exit: median %7.1f ms   %d outputs differ%n",
+                name + ":", median(firstByte) / 1e6, Arrays.stream(firstByte).max().orElse(0) / 1e6,
+                median(exit) / 1e6, mismatches);
+    }
+
+    private static double median(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        int n = sorted.length;
+        return n == 0 ? 0 : n % 2 == 1 ? sorted[n / 2] : (sorted[n / 2 - 1] + sorted[n / 2]) / 2.0;
+    }
+}
@@ -0,0 +1,66 @@
+package bench;
+
+import lexer.Scanner;
+import lexer.Token;
+import lexer.TokenBuffer;
+import lexer.Tokeniser;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the heap retained by a token stream held as Token objects against a TokenBuffer,
+ * and the bytes allocated by the current thread while building each of them.
+ *
+ * Usage: java -cp bin bench.TokenHeapBench inputfile
+ */
+public class TokenHeapBench {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws FileNotFoundException {
+        if (args.length != 1) {
+            System.out.println("Usage: java " + TokenHeapBench.class.getName() + " inputfile");
+            System.exit(-1);
+        }
+        File file = new File(args[0]);
+
+        // the scanner buffer is shared by both representations, keep it out of the measurements
+        Scanner scanner = new Scanner(file);
+        Tokeniser tokeniser = new Tokeniser(scanner);
+
+        long used = usedHeap();
+        long allocated = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+        List<Token> objects = new ArrayList<>();
+        for (Token t = tokeniser.nextToken(); t.tokenClass != Token.TokenClass.EOF; t = tokeniser.nextToken())
+            objects.add(t);
+        report("Token objects", objects.size(), allocated, used);
+
+        scanner = new Scanner(file);
+        tokeniser = new Tokeniser(scanner);
+        objects = null;
+
+        used = usedHeap();
+        allocated = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+        TokenBuffer buffer = tokeniser.tokenise();
+        report("TokenBuffer", buffer.size(), allocated, used);
+    }
+
+    private static void report(String name, int tokens, long allocatedBefore, long usedBefore) {
+        long allocated = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore;
+        long retained = usedHeap() - usedBefore;
+        System.out.printf("%-14s %9d tokens, allocated %8.1f MB (%5.1f B/token), retained %8.1f MB (%5.1f B/token)%n",
+                name, tokens, allocated / 1e6, (double) allocated / tokens, retained / 1e6, (double) retained / tokens);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
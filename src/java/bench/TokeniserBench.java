@@ -0,0 +1,84 @@
+package bench;
+
+import lexer.Scanner;
+import lexer.Token;
+import lexer.Tokeniser;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Measures the throughput of the Tokeniser in tokens/sec.
+ *
+ * Usage: java -cp bin bench.TokeniserBench [inputfile ...]
+ * Without arguments, stress inputs (1M blank lines, multi-MB comments) are generated and tokenised.
+ */
+public class TokeniserBench {
+
+    private static final int WARMUP = 3;
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            stress();
+        } else {
+            for (String arg : args)
+                run(new File(arg));
+        }
+    }
+
+    private static void stress() throws IOException {
+        File blankLines = File.createTempFile("blank-lines", ".c");
+        File blockComment = File.createTempFile("block-comment", ".c");
+        File lineComments = File.createTempFile("line-comments", ".c");
+        blankLines.deleteOnExit();
+        blockComment.deleteOnExit();
+        lineComments.deleteOnExit();
+
+        try (PrintWriter writer = new PrintWriter(blankLines)) {
+            for (int i = 0; i < 1_000_000; i++)
+                writer.println();
+            writer.println("int x;");
+        }
+        try (PrintWriter writer = new PrintWriter(blockComment)) {
+            writer.println("/*");
+            for (int i = 0; i < 100_000; i++)
+                writer.println("   int commented_out_variable_number; while (x) { x = x - 1; }");
+            writer.println("*/");
+            writer.println("int x;");
+        }
+        try (PrintWriter writer = new PrintWriter(lineComments)) {
+            for (int i = 0; i < 100_000; i++)
+                writer.println("// int commented_out_variable_number; while (x) { x = x - 1; }");
+            writer.println("int x;");
+        }
+
+        run(blankLines);
+        run(blockComment);
+        run(lineComments);
+    }
+
+    private static int tokenise(File file) throws FileNotFoundException {
+        Tokeniser tokeniser = new Tokeniser(new Scanner(file));
+        int count = 0;
+        for (Token t = tokeniser.nextToken(); t.tokenClass != Token.TokenClass.EOF; t = tokeniser.nextToken())
+            count++;
+        return count;
+    }
+
+    private static void run(File file) throws FileNotFoundException {
+        int tokens = 0;
+        for (int i = 0; i < WARMUP; i++)
+            tokens = tokenise(file);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++)
+            tokens = tokenise(file);
+        double seconds = (System.nanoTime() - start) / 1e9 / RUNS;
+
+        System.out.printf("%s: %d bytes, %d tokens, %.2f ms, %.0f tokens/sec%n",
+                file.getName(), file.length(), tokens, seconds * 1e3, tokens / seconds);
+    }
+}
@@ -0,0 +1,89 @@
+package check;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Regression checks of the compiler internals, over the programs of the tests directory and generated
+ * inputs: what automark.py cannot see through the exit codes of Main. Each check runs in turn, a failed
+ * expectation or an exception is reported, and the exit status is 1 if any check failed.
+ *
+ * Usage: java -cp bin check.Checks [tests directory]
+ * or:    ant check
+ */
+public class Checks {
+
+    interface Check {
+        void run(File tests) throws Exception;
+    }
+
+    private static final List<String> names = new ArrayList<>();
+    private static final List<Check> checks = new ArrayList<>();
+
+    private static String current;
+    private static int failures = 0;
+
+    static {
+        add("lexer: 1M blank lines and multi-MB comments", LexerChecks::stress);
+        add("lexer: parallel tokens and errors same as serial", LexerChecks::parallel);
+        add("pipeline: tokens and errors in serial order", PipelineChecks::order);
+        add("pipeline: lexer thread stops with the parser", PipelineChecks::shutdown);
+        add("sem: symbol table shadowing and scope exits", SemanticChecks::symbolTable);
+        add("sem: single pass errors same as the four visitors", SemanticChecks::singlePass);
+    }
+
+    private static void add(String name, Check check) {
+        names.add(name);
+        checks.add(check);
+    }
+
+    public static void main(String[] args) {
+        File tests = new File(args.length > 0 ? args[0] : "tests");
+        int failed = 0;
+        for (int i = 0; i < checks.size(); i++) {
+            current = names.get(i);
+            int before = failures;
+            try {
+                checks.get(i).run(tests);
+            } catch (Throwable t) {
+                StringWriter trace = new StringWriter();
+                t.printStackTrace(new PrintWriter(trace));
+                fail("threw " + trace);
+            }
+            if (failures > before)
+                failed++;
+            System.out.println((failures == before ? "PASS " : "FAIL ") + current);
+        }
+        System.out.println("TOTAL: " + (checks.size() - failed) + "/" + checks.size());
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    static void fail(String message) {
+        failures++;
+        System.out.println("  " + current + ": " + message);
+    }
+
+    static void check(boolean condition, String message) {
+        if (!condition)
+            fail(message);
+    }
+
+    static void equal(Object expected, Object actual, String what) {
+        if (!Objects.equals(expected, actual))
+            fail(what + ": expected " + expected + ", got " + actual);
+    }
+
+    // the .c programs of the tests directory, in name order
+    static File[] sources(File tests) {
+        File[] sources = tests.listFiles((dir, name) -> name.endsWith(".c"));
+        if (sources == null)
+            throw new IllegalArgumentException("no tests directory " + tests);
+        Arrays.sort(sources);
+        return sources;
+    }
+}
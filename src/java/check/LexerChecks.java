@@ -0,0 +1,137 @@
+package check;
+
+import lexer.ParallelTokeniser;
+import lexer.Scanner;
+import lexer.Token.TokenClass;
+import lexer.TokenBuffer;
+import lexer.Tokeniser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static check.Checks.equal;
+import static check.Checks.fail;
+
+class LexerChecks {
+
+    // far less than the recursion of the old Tokeniser.next() needed for the inputs below
+    private static final long SMALL_STACK = 256 << 10;
+
+    /*
+     * Long runs of blank lines and comments are skipped in a loop: they lex to the few tokens after them,
+     * at the right line, on a small stack.
+     */
+    static void stress(File tests) throws InterruptedException {
+        StringBuilder blankLines = new StringBuilder();
+        for (int i = 0; i < 1_000_000; i++)
+            blankLines.append('\n');
+        blankLines.append("int x;\n");
+
+        StringBuilder blockComment = new StringBuilder("/*\n");
+        StringBuilder lineComments = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            blockComment.append("   int commented_out_variable_number; while (x) { x = x - 1; }\n");
+            lineComments.append("// int commented_out_variable_number; while (x) { x = x - 1; }\n");
+        }
+        blockComment.append("*/\nint x;\n");
+        lineComments.append("int x;\n");
+
+        onSmallStack("1M blank lines", blankLines.toString(), 1_000_001);
+        onSmallStack("a " + (blockComment.length() >> 20) + " MB block comment", blockComment.toString(), 100_003);
+        onSmallStack("100k line comments", lineComments.toString(), 100_001);
+    }
+
+    private static void onSmallStack(String name, String source, int line) throws InterruptedException {
+        Throwable[] thrown = new Throwable[1];
+        TokenBuffer[] lexed = new TokenBuffer[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                lexed[0] = tokeniser(source).tokenise();
+            } catch (Throwable t) {
+                thrown[0] = t;
+            }
+        }, "stress", SMALL_STACK);
+        thread.start();
+        thread.join();
+
+        if (thrown[0] != null) {
+            fail(name + ": threw " + thrown[0]); // a StackOverflowError if the skipping recursed
+            return;
+        }
+        TokenBuffer tokens = lexed[0];
+        equal(4, tokens.size(), name + ", tokens");
+        equal(TokenClass.INT, tokens.tokenClass(0), name + ", first token");
+        equal(line, tokens.line(0), name + ", line of the first token");
+        equal(TokenClass.EOF, tokens.tokenClass(3), name + ", last token");
+    }
+
+    /*
+     * The ParallelTokeniser lexes the same tokens as the Tokeniser, and reports the same errors in the same
+     * order, however the source is split: the programs of the tests directory, and the whole of them
+     * concatenated with unrecognised characters, quotes and comment delimiters strewn across the splits.
+     */
+    static void parallel(File tests) throws IOException {
+        StringBuilder all = new StringBuilder();
+        for (File source : Checks.sources(tests)) {
+            String text = new String(Files.readAllBytes(source.toPath()));
+            sameAsSerial(source.getName(), text);
+            all.append(text).append('\n');
+        }
+
+        Random random = new Random(42);
+        String[] noise = { "@", "#", "$", "`", "\\", "\"", "'", "/*", "*/", "//", "\n", "\r\n" };
+        StringBuilder mutated = new StringBuilder(all);
+        for (int i = 0; i < 2000; i++)
+            mutated.insert(random.nextInt(mutated.length()), noise[random.nextInt(noise.length)]);
+        sameAsSerial("the whole tests directory", all.toString());
+        sameAsSerial("the whole tests directory with lexing errors", mutated.toString());
+    }
+
+    private static void sameAsSerial(String name, String source) {
+        ByteArrayOutputStream expectedErrors = new ByteArrayOutputStream();
+        Tokeniser serial = new Tokeniser(new Scanner(source));
+        serial.setOutput(new PrintStream(expectedErrors, true));
+        TokenBuffer expected = serial.tokenise();
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int chunks : new int[] { 1, 2, 3, 8, 64 }) {
+                ByteArrayOutputStream errors = new ByteArrayOutputStream();
+                ParallelTokeniser parallel = new ParallelTokeniser(new Scanner(source), pool, chunks);
+                parallel.setOutput(new PrintStream(errors, true));
+                TokenBuffer tokens = parallel.tokenise();
+
+                String what = name + " in " + chunks + " chunks";
+                equal(serial.getErrorCount(), parallel.getErrorCount(), what + ", error count");
+                equal(expectedErrors.toString(), errors.toString(), what + ", error reports");
+                equal(expected.size(), tokens.size(), what + ", tokens");
+                for (int i = 0; i < Math.min(expected.size(), tokens.size()); i++) {
+                    if (!sameToken(expected, tokens, i)) {
+                        fail(what + ": token " + i + " is " + tokens.get(i) + " at " + tokens.position(i)
+                                + " instead of " + expected.get(i) + " at " + expected.position(i));
+                        break;
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    static boolean sameToken(TokenBuffer a, TokenBuffer b, int i) {
+        return a.tokenClass(i) == b.tokenClass(i) && a.start(i) == b.start(i) && a.end(i) == b.end(i)
+                && a.line(i) == b.line(i) && a.column(i) == b.column(i) && a.data(i).equals(b.data(i));
+    }
+
+    static Tokeniser tokeniser(String source) {
+        Tokeniser tokeniser = new Tokeniser(new Scanner(source));
+        tokeniser.setOutput(new PrintStream(OutputStream.nullOutputStream()));
+        return tokeniser;
+    }
+}
@@ -0,0 +1,105 @@
+package check;
+
+import lexer.Scanner;
+import lexer.TokenBuffer;
+import lexer.Tokeniser;
+import parser.Parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+
+import static check.Checks.check;
+import static check.Checks.equal;
+import static check.Checks.fail;
+
+class PipelineChecks {
+
+    // how long the lexer thread may take to notice it has been stopped
+    private static final long STOP_MILLIS = 5000;
+
+    /*
+     * A pipelined buffer holds the tokens of the Tokeniser in the same order, and prints the same error
+     * reports, over the programs of the tests directory and a source of many batches with lexing errors.
+     */
+    static void order(File tests) throws IOException {
+        StringBuilder all = new StringBuilder();
+        for (File source : Checks.sources(tests)) {
+            String text = new String(Files.readAllBytes(source.toPath()));
+            sameAsSerial(source.getName(), text);
+            all.append(text).append('\n');
+        }
+        StringBuilder many = new StringBuilder();
+        while (many.length() < 4 << 20)
+            many.append(all).append("int @x; char $c;\n");
+        sameAsSerial("the tests directory repeated up to 4 MB", many.toString());
+    }
+
+    private static void sameAsSerial(String name, String source) {
+        ByteArrayOutputStream expectedErrors = new ByteArrayOutputStream();
+        Tokeniser serial = new Tokeniser(new Scanner(source));
+        serial.setOutput(new PrintStream(expectedErrors, true));
+        TokenBuffer expected = serial.tokenise();
+
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        Tokeniser tokeniser = new Tokeniser(new Scanner(source));
+        tokeniser.setOutput(new PrintStream(errors, true));
+        TokenBuffer tokens = TokenBuffer.pipelined(tokeniser);
+        try {
+            tokens.fill();
+        } finally {
+            tokens.close();
+        }
+
+        equal(expectedErrors.toString(), errors.toString(), name + ", error reports");
+        equal(expected.size(), tokens.size(), name + ", tokens");
+        for (int i = 0; i < Math.min(expected.size(), tokens.size()); i++) {
+            if (!LexerChecks.sameToken(expected, tokens, i)) {
+                fail(name + ": token " + i + " is " + tokens.get(i) + " at " + tokens.position(i)
+                        + " instead of " + expected.get(i) + " at " + expected.position(i));
+                break;
+            }
+        }
+    }
+
+    /*
+     * The lexer thread ends once the buffer is closed, whether the tokens were all read or not, and once
+     * a parser which stopped long before the end of a big source has returned.
+     */
+    static void shutdown(File tests) throws InterruptedException {
+        StringBuilder declarations = new StringBuilder();
+        for (int i = 0; declarations.length() < 8 << 20; i++)
+            declarations.append("int x").append(i).append(";\n");
+
+        TokenBuffer tokens = TokenBuffer.pipelined(LexerChecks.tokeniser(declarations.toString()));
+        tokens.tokenClass(10);
+        tokens.close();
+        stopped("after a close with most of the tokens unread");
+
+        tokens = TokenBuffer.pipelined(LexerChecks.tokeniser("int x;"));
+        tokens.fill();
+        tokens.close();
+        stopped("after a close with every token read");
+
+        // the parser expects EOF after the first closing brace and returns, the rest is never read
+        Parser parser = new Parser(TokenBuffer.pipelined(
+                LexerChecks.tokeniser("void main() { } }\n" + declarations)));
+        parser.setOutput(new PrintStream(OutputStream.nullOutputStream()));
+        parser.parse();
+        check(parser.getErrorCount() > 0, "the parser found no error in the stray brace");
+        check(parser.getTokenCount() < 100_000, "the parser read " + parser.getTokenCount() + " tokens");
+        stopped("after a parser which stopped early");
+    }
+
+    private static void stopped(String when) throws InterruptedException {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("lexer")) {
+                thread.join(STOP_MILLIS);
+                check(!thread.isAlive(), "the lexer thread is still running " + when);
+            }
+        }
+    }
+}
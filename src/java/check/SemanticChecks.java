@@ -0,0 +1,197 @@
+package check;
+
+import ast.Program;
+import compiler.CompilationSession;
+import parser.Parser;
+import sem.SemanticAnalyzer;
+import sem.Symbol;
+import sem.SymbolTable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static check.Checks.check;
+import static check.Checks.equal;
+
+class SemanticChecks {
+
+    private static final Pattern WORD = Pattern.compile("\\b[A-Za-z_][A-Za-z0-9_]*\\b");
+    private static final String[] REPLACEMENTS = {
+            "undeclared", "int", "char", "void", "int*", "char*", "struct s", "main", "print_i", "0", "'a'", "\"s\""
+    };
+    private static final String[] INSERTIONS = { "*", "&", "(int)", "(char*)", ".f", "[0]", "-1", "()", ";" };
+
+    private static final class Named extends Symbol {
+        Named(String name) {
+            super(name);
+        }
+
+        @Override
+        public boolean isVarSymbol() {
+            return true;
+        }
+
+        @Override
+        public boolean isFunSymbol() {
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return name + "@" + Integer.toHexString(System.identityHashCode(this));
+        }
+    }
+
+    /*
+     * The single pass reports the errors of the four visitors, in the same order, on the programs of the
+     * tests directory and on random mutations of them: names swapped for undeclared ones, keywords and
+     * other names, dereferences, address-ofs, casts and field accesses strewn in. The programs it cannot
+     * analyse alone are run through the visitors, the stack traces of their failures are left out.
+     */
+    static void singlePass(File tests) throws IOException {
+        Random random = new Random(7);
+        int compared = 0;
+        for (File source : Checks.sources(tests)) {
+            String text = new String(Files.readAllBytes(source.toPath()));
+            compared += sameAsVisitors(source.getName(), text) ? 1 : 0;
+            for (int i = 0; i < 100; i++) {
+                String mutant = mutate(text, random, 1 + random.nextInt(3));
+                compared += sameAsVisitors(source.getName() + " mutant " + i + ":\n" + mutant, mutant) ? 1 : 0;
+            }
+        }
+        check(compared > 500, "only " + compared + " programs parsed");
+    }
+
+    private static String mutate(String text, Random random, int mutations) {
+        for (int m = 0; m < mutations; m++) {
+            List<int[]> words = new ArrayList<>();
+            Matcher matcher = WORD.matcher(text);
+            while (matcher.find())
+                words.add(new int[] { matcher.start(), matcher.end() });
+            int[] word = words.get(random.nextInt(words.size()));
+            if (random.nextBoolean()) {
+                int[] other = words.get(random.nextInt(words.size()));
+                String replacement = random.nextBoolean() ? text.substring(other[0], other[1])
+                        : REPLACEMENTS[random.nextInt(REPLACEMENTS.length)];
+                text = text.substring(0, word[0]) + replacement + text.substring(word[1]);
+            } else {
+                int at = random.nextBoolean() ? word[0] : word[1];
+                text = text.substring(0, at) + INSERTIONS[random.nextInt(INSERTIONS.length)] + text.substring(at);
+            }
+        }
+        return text;
+    }
+
+    // false if the program does not parse
+    private static boolean sameAsVisitors(String name, String source) {
+        String expected = analyze(source, false);
+        if (expected == null)
+            return false;
+        equal(expected, analyze(source, true), name);
+        return true;
+    }
+
+    // the errors reported on a fresh AST of the source, null if it does not parse
+    private static String analyze(String source, boolean singlePass) {
+        Parser parser = new Parser(LexerChecks.tokeniser(source));
+        parser.setOutput(new PrintStream(OutputStream.nullOutputStream()));
+        Program program;
+        try {
+            program = parser.parse();
+        } catch (RuntimeException e) {
+            return null; // a mutation the parser does not recover from, an empty character literal for one
+        }
+        if (parser.getErrorCount() > 0)
+            return null;
+
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        PrintStream err = new PrintStream(errors, true);
+        String result;
+        try {
+            result = "errors: " + new SemanticAnalyzer(singlePass, new CompilationSession(err, err)).analyze(program);
+        } catch (RuntimeException e) {
+            result = "threw " + e.getClass().getName();
+        }
+        return result + "\n" + errors.toString()
+                .replaceAll("(?m)^\\s+at .*\\R", "")
+                .replaceAll("@[0-9a-f]+", "@");
+    }
+
+    /*
+     * The shadowing of tests/shadow.c, then random scopes and bindings against one map per scope, the
+     * chained Scope the SymbolTable replaced, over enough names to grow the table several times.
+     */
+    static void symbolTable(File tests) {
+        SymbolTable table = new SymbolTable();
+        Symbol global = new Named("x");
+        table.put(global);
+        table.enterScope();
+        equal(global, table.lookup("x"), "global x from the function body");
+        equal(null, table.lookupCurrent("x"), "global x in the current scope of the function body");
+        Symbol block = new Named("x");
+        table.put(block);
+        table.enterScope();
+        Symbol inner = new Named("x");
+        table.put(inner);
+        equal(inner, table.lookup("x"), "x in the inner block");
+        Symbol again = new Named("x");
+        table.put(again);
+        equal(again, table.lookupCurrent("x"), "x bound twice in the inner block");
+        table.exitScope();
+        equal(block, table.lookup("x"), "x back in the block");
+        equal(block, table.lookupCurrent("x"), "x in the current scope of the block");
+        table.exitScope();
+        equal(global, table.lookup("x"), "global x after the block");
+        equal(global, table.lookupCurrent("x"), "global x in the global scope");
+
+        Random random = new Random(12);
+        List<Map<String, Symbol>> scopes = new ArrayList<>(Collections.singletonList(new HashMap<>()));
+        table = new SymbolTable();
+        for (int step = 0; step < 200_000; step++) {
+            // names are not interned, the table must compare them by value
+            String name = new String("v" + random.nextInt(step < 100_000 ? 40 : 3000));
+            int op = random.nextInt(10);
+            if (op == 0) {
+                scopes.add(new HashMap<>());
+                table.enterScope();
+            } else if (op == 1 && scopes.size() > 1) {
+                scopes.remove(scopes.size() - 1);
+                table.exitScope();
+            } else if (op < 5) {
+                Symbol symbol = new Named(name);
+                scopes.get(scopes.size() - 1).put(name, symbol);
+                table.put(symbol);
+            } else {
+                Symbol expected = null;
+                for (int d = scopes.size() - 1; d >= 0 && expected == null; d--)
+                    expected = scopes.get(d).get(name);
+                Symbol current = scopes.get(scopes.size() - 1).get(name);
+                if (expected != table.lookup(name) || current != table.lookupCurrent(name)) {
+                    equal(expected, table.lookup(name), "step " + step + ", lookup " + name);
+                    equal(current, table.lookupCurrent(name), "step " + step + ", lookupCurrent " + name);
+                    return;
+                }
+            }
+        }
+        while (scopes.size() > 1) {
+            scopes.remove(scopes.size() - 1);
+            table.exitScope();
+        }
+        for (int i = 0; i < 3000; i++) {
+            String name = "v" + i;
+            check(scopes.get(0).get(name) == table.lookup(name), "outermost " + name + " after every scope is left");
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the same command on many input files concurrently, on a fixed pool of threads.
+ *
+ * The output of the batch does not depend on the scheduling. Each file is compiled in its own
+ * CompilationSession, so its labels and registers are numbered as if it was compiled alone. Its standard
+ * output and error are buffered and copied out in the order of the inputs once it is done, followed by
+ * its exit status.
+ */
+public class BatchCompiler {
+
+    private final CompileServer.Command command;
+    private final int threads;
+
+    public BatchCompiler(CompileServer.Command command, int threads) {
+        this.command = command;
+        this.threads = threads;
+    }
+
+    /*
+     * Runs the command with the options then inputs[i] and outputs[i] for every i, and returns the exit
+     * status of each. An exception thrown by the command is reported on its standard error, with the
+     * status 1, as the JVM would report it.
+     */
+    public int[] run(String[] options, List<File> inputs, List<File> outputs, PrintStream out, PrintStream err)
+            throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Job>> jobs = new ArrayList<>(inputs.size());
+            for (int i = 0; i < inputs.size(); i++) {
+                String[] args = new String[options.length + 2];
+                System.arraycopy(options, 0, args, 0, options.length);
+                args[options.length] = inputs.get(i).getPath();
+                args[options.length + 1] = outputs.get(i).getPath();
+                jobs.add(workers.submit(() -> new Job(args)));
+            }
+
+            int[] statuses = new int[inputs.size()];
+            for (int i = 0; i < statuses.length; i++) {
+                Job job;
+                try {
+                    job = jobs.get(i).get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause()); // a Job catches everything
+                }
+                jobs.set(i, null); // its output can go once it is copied
+                out.write(job.out.toByteArray(), 0, job.out.size());
+                out.flush();
+                err.write(job.err.toByteArray(), 0, job.err.size());
+                err.flush();
+                out.println(inputs.get(i) + ": exit " + job.status);
+                statuses[i] = job.status;
+            }
+            return statuses;
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private final class Job {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        final int status;
+
+        Job(String[] args) {
+            PrintStream o = new PrintStream(out);
+            PrintStream e = new PrintStream(err);
+            status = CompileServer.run(command, args, null, o, e);
+            o.flush();
+            e.flush();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package compiler;
+
+import ast.ASTCounter;
+import ast.Program;
+import gen.CodeGenerator;
+import lexer.Scanner;
+import lexer.Tokeniser;
+import parser.Parser;
+import sem.BuiltinFunSymbols;
+import sem.SemanticAnalyzer;
+import sem.Symbol;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Map;
+
+/**
+ * The state of one compilation: the counters numbering the virtual registers, the labels, the CFG nodes
+ * and the names made up by the code generator, the built-in functions, where the diagnostics go, the
+ * intermediate representations to dump, and the time and work of each phase.
+ * Nothing is shared between two sessions, so each compiles as it would in a fresh JVM and separate
+ * sessions can be used on separate threads. A session itself is not thread-safe.
+ *
+ * compile() is the in-memory entry point: source text in, assembly text out.
+ */
+public class CompilationSession {
+
+    // same as the exit codes of Main
+    public static final int PASS = 0;
+    public static final int SEM_FAIL = 240;
+    public static final int PARSER_FAIL = 245;
+
+    public static class Result {
+        public final int status;
+        public final String assembly; // null unless status is PASS
+
+        Result(int status, String assembly) {
+            this.status = status;
+            this.assembly = assembly;
+        }
+    }
+
+    private final PrintStream out;
+    private final PrintStream err;
+
+    private int registers;
+    private int labels;
+    private long cfgNodes;
+    private int names;
+    private Map<String, Symbol> builtins;
+    private CompilationStats stats;
+
+    // the intermediate representations to dump, none by default
+    private IRDump dump = IRDump.NONE;
+
+    /*
+     * A session reporting the lexing and parsing errors on System.out and the semantic errors on System.err,
+     * as Main does.
+     */
+    public CompilationSession() {
+        this(System.out, System.err);
+    }
+
+    public CompilationSession(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+        reset();
+    }
+
+    // numbering starts over for each program, so that its output does not depend on what came before
+    private void reset() {
+        registers = 0;
+        labels = 0;
+        cfgNodes = 0;
+        names = 0;
+        builtins = BuiltinFunSymbols.create();
+        stats = new CompilationStats();
+    }
+
+    public int nextRegisterId() {
+        return registers++;
+    }
+
+    public int nextLabelId() {
+        return labels++;
+    }
+
+    public long nextCFGNodeId() {
+        return cfgNodes++;
+    }
+
+    public int registerCount() {
+        return registers;
+    }
+
+    public int labelCount() {
+        return labels;
+    }
+
+    /*
+     * Numbers the registers and labels past those of code which is not generated again, but reused from
+     * the function cache, as if it had been.
+     */
+    public void skipRegisters(int count) {
+        registers += count;
+    }
+
+    public void skipLabels(int count) {
+        labels += count;
+    }
+
+    public long cfgNodeCount() {
+        return cfgNodes;
+    }
+
+    public int nextNameId() {
+        return names++;
+    }
+
+    public Map<String, Symbol> getBuiltins() {
+        return builtins;
+    }
+
+    public CompilationStats getStats() {
+        return stats;
+    }
+
+    public PrintStream getOut() {
+        return out;
+    }
+
+    public PrintStream getErr() {
+        return err;
+    }
+
+    public IRDump getDump() {
+        return dump;
+    }
+
+    public void setDump(IRDump dump) {
+        this.dump = dump;
+    }
+
+    /*
+     * Compiles the source of a program to assembly, as Main -gen would. The errors are reported on the
+     * streams of the session and the status tells at which stage the compilation stopped. The lexing is
+     * part of the parsing phase of the stats, the parser pulls the tokens as it goes.
+     */
+    public Result compile(String source) {
+        reset();
+        try {
+            Tokeniser tokeniser = new Tokeniser(new Scanner(source));
+            tokeniser.setOutput(out);
+            Parser parser = new Parser(tokeniser);
+            parser.setOutput(out);
+            stats.begin(CompilationStats.Phase.PARSING);
+            Program program = parser.parse();
+            stats.end();
+            stats.count(CompilationStats.Counter.TOKENS, parser.getTokenCount());
+            if (parser.getErrorCount() > 0)
+                return new Result(PARSER_FAIL, null);
+            stats.count(CompilationStats.Counter.AST_NODES, ASTCounter.count(program));
+            dump.ast(program);
+
+            stats.begin(CompilationStats.Phase.SEMANTIC_ANALYSIS);
+            int errors = new SemanticAnalyzer(this).analyze(program);
+            stats.end();
+            if (errors > 0)
+                return new Result(SEM_FAIL, null);
+
+            StringWriter assembly = new StringWriter();
+            new CodeGenerator(this).emitProgram(program, new PrintWriter(assembly));
+            return new Result(PASS, assembly.toString());
+        } finally {
+            dump.close();
+            stats.commit();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package compiler;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Where a compilation spends its time: the wall time and the bytes allocated by each phase, and counters
+ * of the work done. A phase only counts the allocations of the thread running it, so the lexing done
+ * ahead by a -pipeline thread is not included. A phase that runs several times adds up.
+ *
+ * Each phase is also recorded as a minic.Phase JFR event, and the counters as a minic.Compilation event
+ * spanning the whole compilation, for a flight recording which enables them.
+ */
+public class CompilationStats {
+
+    public enum Phase {
+        LEXING, PARSING, SEMANTIC_ANALYSIS, CODE_GENERATION, LIVENESS, INTERFERENCE, REGISTER_ALLOCATION, EMISSION
+    }
+
+    public enum Counter {
+        TOKENS, AST_NODES, VIRTUAL_REGISTERS, CFG_NODES, LIVENESS_ITERATIONS, INTERFERENCE_EDGES, SPILLED_REGISTERS,
+        CACHE_HITS, CACHE_MISSES, FUNCTION_HITS, FUNCTION_MISSES,
+        // programs the single pass semantic analysis left to the visitors, see SinglePassVisitor
+        SEMANTIC_FALLBACKS
+    }
+
+    // null if the JVM cannot tell how much a thread allocated
+    private static final com.sun.management.ThreadMXBean THREADS = allocationBean();
+
+    private final boolean[] ran = new boolean[Phase.values().length];
+    private final long[] nanos = new long[Phase.values().length];
+    private final long[] allocated = new long[Phase.values().length];
+    private final long[] counters = new long[Counter.values().length];
+    // the phases timed within another one, by split(), whose allocations are not known
+    private final boolean[] interleaved = new boolean[Phase.values().length];
+
+    private Phase current;
+    private long start;
+    private long startAllocated;
+    private PhaseEvent event;
+    private final CompilationEvent compilation = new CompilationEvent();
+
+    public CompilationStats() {
+        compilation.begin();
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled())
+                return threads;
+        }
+        return null;
+    }
+
+    private static long allocatedBytes() {
+        return THREADS == null ? 0 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /*
+     * Starts timing a phase, until end(). Phases do not nest.
+     */
+    public void begin(Phase phase) {
+        current = phase;
+        event = new PhaseEvent();
+        event.phase = phase.name();
+        event.begin();
+        startAllocated = allocatedBytes();
+        start = System.nanoTime();
+    }
+
+    public void end() {
+        long time = System.nanoTime() - start;
+        long bytes = allocatedBytes() - startAllocated;
+        int p = current.ordinal();
+        ran[p] = true;
+        nanos[p] += time;
+        allocated[p] += bytes;
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.allocated = bytes;
+            event.commit();
+        }
+        event = null;
+        current = null;
+    }
+
+    /*
+     * Moves time measured within a phase to a part of it which ran interleaved with the rest, as lexing does
+     * with parsing when the parser pulls the tokens. The allocations of the part stay with the phase.
+     */
+    public void split(Phase phase, Phase part, long partNanos) {
+        nanos[phase.ordinal()] -= partNanos;
+        nanos[part.ordinal()] += partNanos;
+        ran[part.ordinal()] = true;
+        interleaved[part.ordinal()] = true;
+    }
+
+    public void count(Counter counter, long n) {
+        counters[counter.ordinal()] += n;
+    }
+
+    public boolean ran(Phase phase) {
+        return ran[phase.ordinal()];
+    }
+
+    public long nanos(Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    // -1 if the JVM cannot tell, or if the phase was only timed within another one
+    public long allocated(Phase phase) {
+        return THREADS == null || interleaved[phase.ordinal()] ? -1 : allocated[phase.ordinal()];
+    }
+
+    public long get(Counter counter) {
+        return counters[counter.ordinal()];
+    }
+
+    /*
+     * Ends the minic.Compilation event, once the compilation is over.
+     */
+    public void commit() {
+        compilation.end();
+        if (compilation.shouldCommit()) {
+            compilation.tokens = get(Counter.TOKENS);
+            compilation.astNodes = get(Counter.AST_NODES);
+            compilation.virtualRegisters = get(Counter.VIRTUAL_REGISTERS);
+            compilation.cfgNodes = get(Counter.CFG_NODES);
+            compilation.livenessIterations = get(Counter.LIVENESS_ITERATIONS);
+            compilation.interferenceEdges = get(Counter.INTERFERENCE_EDGES);
+            compilation.spilledRegisters = get(Counter.SPILLED_REGISTERS);
+            compilation.cacheHits = get(Counter.CACHE_HITS);
+            compilation.cacheMisses = get(Counter.CACHE_MISSES);
+            compilation.functionHits = get(Counter.FUNCTION_HITS);
+            compilation.functionMisses = get(Counter.FUNCTION_MISSES);
+            compilation.semanticFallbacks = get(Counter.SEMANTIC_FALLBACKS);
+            compilation.commit();
+        }
+    }
+
+    private static String name(Enum<?> e) {
+        return e.name().toLowerCase().replace('_', ' ');
+    }
+
+    public void print(PrintStream out) {
+        long totalNanos = 0;
+        long totalAllocated = 0;
+        out.printf("%-22s %12s %16s%n", "phase", "time (ms)", "allocated (KB)");
+        for (Phase phase : Phase.values()) {
+            if (!ran(phase))
+                continue;
+            totalNanos += nanos(phase);
+            totalAllocated += Math.max(0, allocated(phase));
+            out.printf("%-22s %12.3f %16s%n", name(phase), nanos(phase) / 1e6, kilobytes(allocated(phase)));
+        }
+        out.printf("%-22s %12.3f %16s%n", "total", totalNanos / 1e6, kilobytes(THREADS == null ? -1 : totalAllocated));
+        for (Counter counter : Counter.values())
+            out.printf("%-22s %12d%n", name(counter), get(counter));
+    }
+
+    private static String kilobytes(long bytes) {
+        return bytes < 0 ? "-" : Long.toString((bytes + 512) / 1024);
+    }
+
+    @Name("minic.Phase")
+    @Label("Compiler Phase")
+    @Category("Mini-C")
+    @StackTrace(false)
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Allocated")
+        @DataAmount
+        long allocated;
+    }
+
+    @Name("minic.Compilation")
+    @Label("Compilation")
+    @Category("Mini-C")
+    @StackTrace(false)
+    static class CompilationEvent extends Event {
+        @Label("Tokens")
+        long tokens;
+        @Label("AST Nodes")
+        long astNodes;
+        @Label("Virtual Registers")
+        long virtualRegisters;
+        @Label("CFG Nodes")
+        long cfgNodes;
+        @Label("Liveness Iterations")
+        long livenessIterations;
+        @Label("Interference Edges")
+        long interferenceEdges;
+        @Label("Spilled Registers")
+        long spilledRegisters;
+        @Label("Cache Hits")
+        long cacheHits;
+        @Label("Cache Misses")
+        long cacheMisses;
+        @Label("Function Cache Hits")
+        long functionHits;
+        @Label("Function Cache Misses")
+        long functionMisses;
+        @Label("Semantic Analysis Fallbacks")
+        long semanticFallbacks;
+    }
+}
@@ -0,0 +1,335 @@
+package compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The assembly of earlier compilations, in a directory shared by the compiler runs, keyed by the SHA-256 of
+ * everything it depends on: the compiler classes, the options which change the output, the source and the
+ * headers it may include. A hit is the assembly as it was written, no phase of the compiler runs.
+ *
+ * Many compilers can use the directory at once. An entry is written to a temporary file renamed into place,
+ * so a reader sees the whole of it or nothing, and the bookkeeping (the hit and miss counters, the size of
+ * the entries, the eviction) is done under a lock on the directory's lock file. The least recently used
+ * entries, by modification time, which a hit refreshes, are evicted when the entries outgrow the limit.
+ */
+public class CompileCache {
+
+    public static final long DEFAULT_LIMIT = 64L << 20;
+
+    private static final int MAGIC = 0x4d435354; // "MCST"
+    private static final int VERSION = 1;
+    private static final String ENTRY = ".s";
+    private static final String TEMPORARY = ".tmp";
+    // temporary files left behind by a compiler killed while storing, removed by the eviction
+    private static final long ABANDONED_MILLIS = 60 * 60 * 1000;
+    // conservative, a directive in a comment only adds to the key
+    private static final Pattern INCLUDE = Pattern.compile("#include\\s*\"([^\"]*)\"");
+
+    // a file lock is held by the whole JVM, the threads of a batch or of the server take turns for it first
+    private static final Object LOCAL_LOCK = new Object();
+    private static String compilerHash;
+
+    private final File directory;
+    private final long limit;
+
+    public static class Stats {
+        public long hits;
+        public long misses;
+        public long evictions;
+        public long entries;
+        public long bytes;
+
+        public void print(PrintStream out) {
+            out.printf("%-12s %12d%n", "hits", hits);
+            out.printf("%-12s %12d%n", "misses", misses);
+            out.printf("%-12s %12d%n", "evictions", evictions);
+            out.printf("%-12s %12d%n", "entries", entries);
+            out.printf("%-12s %12d%n", "size (KB)", (bytes + 512) / 1024);
+        }
+    }
+
+    private interface Update {
+        void run(Stats stats) throws IOException;
+    }
+
+    public CompileCache(File directory, long limit) {
+        this.directory = directory;
+        this.limit = limit;
+    }
+
+    /*
+     * The key of a source, given the options which change its assembly. With includes, the headers it
+     * includes, transitively, are part of the key, resolved as the parser does relative to the including file.
+     */
+    public String key(byte[] source, File sourceFile, List<String> options, boolean includes) throws IOException {
+        MessageDigest digest = sha256();
+        update(digest, compilerHash());
+        for (String option : options)
+            update(digest, option);
+        update(digest, Integer.toString(source.length));
+        digest.update(source);
+        if (includes)
+            headers(digest, source, sourceFile, new HashSet<>());
+        return hex(digest.digest());
+    }
+
+    private static void headers(MessageDigest digest, byte[] source, File includer, Set<String> seen) throws IOException {
+        Matcher matcher = INCLUDE.matcher(new String(source, StandardCharsets.ISO_8859_1));
+        while (matcher.find()) {
+            File header = new File(includer == null ? null : includer.getParentFile(), matcher.group(1));
+            String path = header.getCanonicalPath();
+            update(digest, path);
+            if (!seen.add(path))
+                continue;
+            byte[] bytes;
+            try {
+                bytes = Files.readAllBytes(header.toPath());
+            } catch (IOException e) {
+                update(digest, "missing"); // the compilation fails, it is not stored anyway
+                continue;
+            }
+            update(digest, Integer.toString(bytes.length));
+            digest.update(bytes);
+            headers(digest, bytes, header, seen);
+        }
+    }
+
+    /*
+     * Returns the assembly for the key and counts a hit, or returns null and counts a miss.
+     */
+    public byte[] lookup(String key) throws IOException {
+        File entry = entry(key);
+        byte[] assembly;
+        try {
+            assembly = Files.readAllBytes(entry.toPath());
+            entry.setLastModified(System.currentTimeMillis());
+        } catch (NoSuchFileException e) {
+            assembly = null; // never stored, or evicted
+        }
+        boolean hit = assembly != null;
+        locked(stats -> {
+            if (hit)
+                stats.hits++;
+            else
+                stats.misses++;
+        });
+        return assembly;
+    }
+
+    /*
+     * Stores the assembly for the key, then evicts the least recently used entries if they are over the limit.
+     */
+    public void store(String key, byte[] assembly) throws IOException {
+        Files.createDirectories(directory.toPath());
+        File temporary = File.createTempFile(key, TEMPORARY, directory);
+        try {
+            Files.write(temporary.toPath(), assembly);
+            locked(stats -> {
+                File entry = entry(key);
+                long replaced = entry.length(); // 0 if there is none
+                Files.move(temporary.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                stats.bytes += assembly.length - replaced;
+                if (stats.bytes > limit)
+                    evict(stats);
+            });
+        } finally {
+            temporary.delete();
+        }
+    }
+
+    /*
+     * The counters since the directory was created, and what it holds now.
+     */
+    public Stats stats() throws IOException {
+        Stats copy = new Stats();
+        if (!directory.isDirectory())
+            return copy;
+        locked(stats -> {
+            copy.hits = stats.hits;
+            copy.misses = stats.misses;
+            copy.evictions = stats.evictions;
+            copy.entries = entries().length;
+            copy.bytes = stats.bytes;
+        });
+        return copy;
+    }
+
+    private void evict(Stats stats) {
+        File[] entries = entries();
+        // the modification times are read once, a hit may refresh them while sorting
+        long[] modified = new long[entries.length];
+        Integer[] order = new Integer[entries.length];
+        long bytes = 0;
+        for (int i = 0; i < entries.length; i++) {
+            modified[i] = entries[i].lastModified();
+            order[i] = i;
+            bytes += entries[i].length();
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> modified[i]));
+        for (int i = 0; i < order.length && bytes > limit; i++) {
+            File entry = entries[order[i]];
+            long length = entry.length();
+            if (entry.delete()) {
+                bytes -= length;
+                stats.evictions++;
+            }
+        }
+        stats.bytes = bytes;
+
+        File[] temporaries = directory.listFiles((dir, name) -> name.endsWith(TEMPORARY));
+        long abandoned = System.currentTimeMillis() - ABANDONED_MILLIS;
+        for (File temporary : temporaries == null ? new File[0] : temporaries) {
+            if (temporary.lastModified() < abandoned)
+                temporary.delete();
+        }
+    }
+
+    private File[] entries() {
+        File[] entries = directory.listFiles((dir, name) -> name.endsWith(ENTRY));
+        return entries == null ? new File[0] : entries;
+    }
+
+    private File entry(String key) {
+        return new File(directory, key + ENTRY);
+    }
+
+    // runs the update on the stats of the directory, under its lock, and writes them back
+    private void locked(Update update) throws IOException {
+        Files.createDirectories(directory.toPath());
+        synchronized (LOCAL_LOCK) {
+            try (FileChannel channel = FileChannel.open(new File(directory, "lock").toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock = channel.lock();
+                try {
+                    Stats stats = readStats();
+                    update.run(stats);
+                    writeStats(stats);
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+
+    private File statsFile() {
+        return new File(directory, "stats");
+    }
+
+    // missing or unreadable stats start over, with the size of the entries there are
+    private Stats readStats() {
+        Stats stats = new Stats();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(statsFile())))) {
+            if (in.readInt() == MAGIC && in.readInt() == VERSION) {
+                stats.hits = in.readLong();
+                stats.misses = in.readLong();
+                stats.evictions = in.readLong();
+                stats.bytes = in.readLong();
+                return stats;
+            }
+        } catch (IOException e) {
+            // start over
+        }
+        stats.hits = stats.misses = stats.evictions = 0;
+        for (File entry : entries())
+            stats.bytes += entry.length();
+        return stats;
+    }
+
+    // only ever written under the lock, no need to rename it into place
+    private void writeStats(Stats stats) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(statsFile())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(stats.hits);
+            out.writeLong(stats.misses);
+            out.writeLong(stats.evictions);
+            out.writeLong(stats.bytes);
+        }
+    }
+
+    /*
+     * Stands for the version of the compiler: the hash of its classes, the directory or the jar they were
+     * loaded from, so that any rebuild invalidates the cache.
+     */
+    private static synchronized String compilerHash() throws IOException {
+        if (compilerHash != null)
+            return compilerHash;
+        CodeSource code = CompileCache.class.getProtectionDomain().getCodeSource();
+        if (code == null)
+            throw new IOException("the compiler classes are not in a directory or a jar");
+        Path location;
+        try {
+            location = Paths.get(code.getLocation().toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            throw new IOException("the compiler classes are not in a directory or a jar", e);
+        }
+
+        MessageDigest digest = sha256();
+        if (Files.isDirectory(location)) {
+            List<Path> classes;
+            try (Stream<Path> files = Files.walk(location)) {
+                classes = files.filter(p -> p.toString().endsWith(".class")).sorted().collect(Collectors.toList());
+            }
+            for (Path path : classes) {
+                update(digest, location.relativize(path).toString());
+                digest.update(Files.readAllBytes(path));
+            }
+        } else {
+            digest.update(Files.readAllBytes(location));
+        }
+        compilerHash = hex(digest.digest());
+        return compilerHash;
+    }
+
+    // each string ends with a 0, so that the concatenation is unambiguous
+    private static void update(MessageDigest digest, String s) {
+        digest.update(s.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e); // every Java platform provides SHA-256
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes)
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,95 @@
+package compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+
+/**
+ * Sends a command line to a CompileServer and copies its output back, so that the command behaves as if
+ * it had been run by Main in this process.
+ *
+ * The request is the token of the server, read from CompileServer.tokenFile(port), the working directory,
+ * against which the server resolves the paths of the command, the number of arguments and the arguments,
+ * as modified UTF-8 strings. The response is a sequence of frames,
+ * each a kind byte followed by an int: OUT and ERR frames carry that many bytes of output, the EXIT frame
+ * carries the exit status of the command and ends the response.
+ */
+public class CompileClient {
+
+    // returned when no server of this user listens on the port
+    public static final int NO_SERVER = Integer.MIN_VALUE;
+
+    public static int run(int port, String[] args, File dir, OutputStream out, OutputStream err) throws IOException {
+        File tokenFile = CompileServer.tokenFile(port);
+        String token;
+        try {
+            token = new String(Files.readAllBytes(tokenFile.toPath()), StandardCharsets.US_ASCII);
+        } catch (NoSuchFileException e) {
+            return NO_SERVER; // none started by this user, or not listening yet
+        }
+        Socket socket;
+        try {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        } catch (ConnectException e) {
+            return NO_SERVER;
+        }
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            DataOutputStream request = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            request.writeUTF(token);
+            request.writeUTF(dir.getPath());
+            request.writeInt(args.length);
+            for (String arg : args)
+                request.writeUTF(arg);
+            request.flush();
+
+            DataInputStream response = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            byte[] buffer = new byte[8192];
+            for (boolean answered = false; true; answered = true) {
+                int kind;
+                try {
+                    kind = response.readByte();
+                } catch (EOFException e) {
+                    if (answered)
+                        throw e;
+                    // the server closes the connection before any frame when the token is not its own
+                    throw new IOException("the server on port " + port + " rejected the token of " + tokenFile, e);
+                }
+                int len = response.readInt();
+                if (kind == CompileServer.EXIT) {
+                    out.flush();
+                    err.flush();
+                    return len;
+                }
+                OutputStream to = kind == CompileServer.OUT ? out : err;
+                while (len > 0) {
+                    int n = Math.min(len, buffer.length);
+                    response.readFully(buffer, 0, n);
+                    to.write(buffer, 0, n);
+                    len -= n;
+                }
+                if (kind == CompileServer.ERR)
+                    err.flush();
+            }
+        }
+    }
+
+    /*
+     * Asks the server to stop once the requests it has accepted are done. Returns false if no server listens.
+     */
+    public static boolean stop(int port) throws IOException {
+        return run(port, new String[] { CompileServer.STOP }, new File(""), OutputStream.nullOutputStream(),
+                OutputStream.nullOutputStream()) != NO_SERVER;
+    }
+}
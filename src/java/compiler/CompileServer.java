@@ -0,0 +1,242 @@
+package compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a warm JVM compiling for CompileClient, so that a build does not pay the JVM startup and the JIT
+ * warm-up for every file. The server only listens on the loopback interface.
+ *
+ * Only the user running the server may use it: the server writes a random token to a file of their home
+ * directory only they can read, tokenFile(port), and a request must start with it. The server closes the
+ * connections which do not, without running anything, and deletes the file when it stops.
+ *
+ * A request is the token, the working directory of the client and a command line, as given to Main. The response is
+ * the standard output and error of the command, streamed in frames as they are written, then its exit
+ * status (see CompileClient). The exception of a command that fails is reported on its standard error
+ * as the JVM would report it, with the status 1.
+ *
+ * Requests are run concurrently on a fixed pool of threads, through a bounded queue. Once the queue is
+ * full the server stops accepting connections until a request is done, and the next clients wait in
+ * the backlog of the socket.
+ */
+public class CompileServer {
+
+    public static final int DEFAULT_PORT = 7091;
+
+    // the command line of the request that stops the server
+    public static final String STOP = "-stop";
+
+    static final int OUT = 1;
+    static final int ERR = 2;
+    static final int EXIT = 3;
+
+    private static final int QUEUE_PER_THREAD = 4;
+    private static final int TOKEN_BYTES = 32;
+    // time a client has to send its request once connected, so that it cannot hold a thread forever
+    private static final int REQUEST_TIMEOUT_MILLIS = 10_000;
+
+    public interface Command {
+        int run(String[] args, File dir, PrintStream out, PrintStream err);
+    }
+
+    private final int port;
+    private final Command command;
+    private final int threads;
+    private ServerSocket server;
+    // the token as written to the file
+    private byte[] token;
+    private volatile boolean stopped;
+
+    public CompileServer(int port, Command command) {
+        this(port, command, Runtime.getRuntime().availableProcessors());
+    }
+
+    public CompileServer(int port, Command command, int threads) {
+        this.port = port;
+        this.command = command;
+        this.threads = threads;
+    }
+
+    /*
+     * The file holding the token of the server listening on the port.
+     */
+    public static File tokenFile(int port) {
+        return new File(System.getProperty("user.home"), ".minic-server-" + port);
+    }
+
+    /*
+     * Serves requests until a STOP request, then waits for the requests being run.
+     */
+    public void serve() throws IOException {
+        int queued = threads * QUEUE_PER_THREAD;
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queued),
+                task -> new Thread(task, "compile"));
+        // a permit per request running or queued, so the queue never overflows
+        Semaphore slots = new Semaphore(threads + queued);
+
+        server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        Path tokenFile = tokenFile(port).toPath();
+        try {
+            token = writeToken(tokenFile);
+            while (!stopped) {
+                slots.acquireUninterruptibly();
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketException e) {
+                    if (stopped)
+                        break; // closed by the STOP request
+                    throw e;
+                }
+                workers.execute(() -> {
+                    try {
+                        handle(socket);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+        } finally {
+            server.close();
+            if (token != null)
+                Files.deleteIfExists(tokenFile);
+            workers.shutdown();
+            try {
+                workers.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /*
+     * Writes a new random token to the file, readable and writable by the owner only. The file of a server
+     * which did not stop cleanly is replaced, this server owns the port now.
+     */
+    private static byte[] writeToken(Path file) throws IOException {
+        byte[] random = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(random);
+        byte[] token = Base64.getEncoder().encode(random);
+        Files.deleteIfExists(file);
+        try {
+            // created with its permissions, it is never readable by others, even for a moment
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(file);
+            File f = file.toFile();
+            if (!(f.setReadable(false, false) && f.setReadable(true, true) &&
+                    f.setWritable(false, false) && f.setWritable(true, true))) {
+                Files.delete(file);
+                throw new IOException("cannot restrict the access to " + file);
+            }
+        } catch (FileAlreadyExistsException e) {
+            throw new IOException(file + " was created by someone else", e);
+        }
+        Files.write(file, token);
+        return token;
+    }
+
+    private void handle(Socket socket) {
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            s.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            DataOutputStream response = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+
+            if (!MessageDigest.isEqual(in.readUTF().getBytes(StandardCharsets.US_ASCII), token))
+                return; // not the user of the server
+            File dir = new File(in.readUTF());
+            String[] args = new String[in.readInt()];
+            for (int i = 0; i < args.length; i++)
+                args[i] = in.readUTF();
+            s.setSoTimeout(0);
+
+            int status;
+            if (args.length == 1 && args[0].equals(STOP)) {
+                stopped = true;
+                server.close();
+                status = 0;
+            } else {
+                PrintStream out = new PrintStream(new BufferedOutputStream(new Frames(response, OUT)));
+                PrintStream err = new PrintStream(new BufferedOutputStream(new Frames(response, ERR)));
+                status = run(command, args, dir, out, err);
+                out.flush();
+                err.flush();
+            }
+            synchronized (response) {
+                response.writeByte(EXIT);
+                response.writeInt(status);
+                response.flush();
+            }
+        } catch (IOException e) {
+            // the client has gone, nothing to report it to
+        }
+    }
+
+    /*
+     * Runs a command, reporting the exception it throws as the JVM would report it on System.err.
+     */
+    static int run(Command command, String[] args, File dir, PrintStream out, PrintStream err) {
+        try {
+            return command.run(args, dir, out, err);
+        } catch (Throwable t) {
+            out.flush();
+            err.print("Exception in thread \"main\" ");
+            t.printStackTrace(err);
+            return 1;
+        }
+    }
+
+    /*
+     * Writes each chunk of the output stream it is given as a frame of the response: its kind, its length
+     * and its bytes. The frames of the standard output and error share the response.
+     */
+    private static final class Frames extends OutputStream {
+        private final DataOutputStream response;
+        private final int kind;
+
+        Frames(DataOutputStream response, int kind) {
+            this.response = response;
+            this.kind = kind;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized (response) {
+                response.writeByte(kind);
+                response.writeInt(len);
+                response.write(b, off, len);
+                response.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package compiler;
+
+import ast.ASTPrinter;
+import ast.FunDecl;
+import ast.Program;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The intermediate representations of a compilation dumped on request, for each function: its AST, its CFG
+ * and its interference graph in dot, and the live sets of each of its instructions. Each is selected by
+ * kind, for every function or for a given one, e.g. -dump=cfg,liveness,interference:main,ast:f. A file
+ * <function>.<kind> is written to the dump directory for each of them.
+ *
+ * A dump is made by the phases compiling the function, so the caches do not reuse the code of a function
+ * with a selected dump, nor the assembly of a compilation with any.
+ *
+ * The phases only build a dump when it is selected, and do not wait for it to be written: the files of
+ * every session go through one background thread, and close() waits for those of this one.
+ */
+public class IRDump {
+
+    public enum Kind {
+        AST("ast.txt"),
+        CFG("cfg.dot"),
+        LIVENESS("liveness.txt"),
+        INTERFERENCE("interference.dot");
+
+        private final String extension;
+
+        Kind(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    // dumps nothing, the default of a session
+    public static final IRDump NONE = new IRDump(new EnumMap<>(Kind.class), null, null);
+
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "dump-writer");
+        thread.setDaemon(true); // close() is what waits for the files
+        return thread;
+    });
+
+    // the functions selected for each kind, null for all of them
+    private final Map<Kind, Set<String>> selection;
+    private final File directory;
+    private final PrintStream err;
+    private final List<Future<?>> pending = new ArrayList<>();
+
+    private IRDump(Map<Kind, Set<String>> selection, File directory, PrintStream err) {
+        this.selection = selection;
+        this.directory = directory;
+        this.err = err;
+    }
+
+    /*
+     * The dumps selected by a comma separated list of kind[:function], written to the directory. The write
+     * errors are reported on err. Throws IllegalArgumentException for an unknown kind.
+     */
+    public static IRDump parse(String spec, File directory, PrintStream err) {
+        Map<Kind, Set<String>> selection = new EnumMap<>(Kind.class);
+        for (String entry : spec.split(",")) {
+            int colon = entry.indexOf(':');
+            Kind kind = Kind.valueOf((colon < 0 ? entry : entry.substring(0, colon)).toUpperCase(Locale.ROOT));
+            if (colon < 0) {
+                selection.put(kind, null);
+            } else if (!selection.containsKey(kind) || selection.get(kind) != null) {
+                selection.computeIfAbsent(kind, k -> new HashSet<>()).add(entry.substring(colon + 1));
+            }
+        }
+        return new IRDump(selection, directory, err);
+    }
+
+    public boolean wants(Kind kind, String function) {
+        if (!selection.containsKey(kind))
+            return false;
+        Set<String> functions = selection.get(kind);
+        return functions == null || functions.contains(function);
+    }
+
+    // whether a dump made from the generated code of the function is selected, rather than from its AST
+    public boolean wantsCode(String function) {
+        return wants(Kind.CFG, function) || wants(Kind.LIVENESS, function) || wants(Kind.INTERFERENCE, function);
+    }
+
+    /*
+     * Writes the dump of a function in the background, the dumps of a function which was not selected are
+     * dropped.
+     */
+    public void write(Kind kind, String function, String content) {
+        if (!wants(kind, function))
+            return;
+        File file = new File(directory, function + "." + kind.extension);
+        pending.add(WRITER.submit(() -> {
+            try {
+                Files.createDirectories(directory.toPath());
+                try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                    writer.write(content);
+                }
+            } catch (IOException e) {
+                err.println("Cannot write " + file + ": " + e);
+            }
+        }));
+    }
+
+    public void ast(Program program) {
+        for (FunDecl fd : program.funDecls) {
+            if (!wants(Kind.AST, fd.name))
+                continue;
+            StringWriter sw = new StringWriter();
+            PrintWriter writer = new PrintWriter(sw);
+            fd.accept(new ASTPrinter(writer));
+            writer.println();
+            writer.flush();
+            write(Kind.AST, fd.name, sw.toString());
+        }
+    }
+
+    // waits until the dumps of the compilation are written
+    public void close() {
+        boolean interrupted = false;
+        for (Future<?> future : pending) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true; // the files are still written, they are waited for anyway
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        }
+        pending.clear();
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+}
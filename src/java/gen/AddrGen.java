@@ -4,6 +4,7 @@ import ast.*;
 import gen.asm.AssemblyProgram;
 import gen.asm.Register;
 import util.SizeHelper;
+import util.StructLayout;
 
 /**
  * Generates code to calculate the address of an expression and return the result in a register.
@@ -50,7 +51,7 @@ public class AddrGen implements ASTVisitor<Register> {
     @Override
     public Register visitVarExpr(VarExpr v) {
         // TODO: to complete
-        Register resReg = new Register.Virtual();
+        Register resReg = new Register.Virtual(asmProg.session);
         AssemblyProgram.Section text = asmProg.getCurrSection();
         if (v.varDecl.isRegister) {
             throw new RuntimeException("try to get the address of a register allocated var");
@@ -70,7 +71,7 @@ public class AddrGen implements ASTVisitor<Register> {
 
     @Override
     public Register visitArrayAccessExpr(ArrayAccessExpr aa) {
-        Register resReg = new Register.Virtual();
+        Register resReg = new Register.Virtual(asmProg.session);
         AssemblyProgram.Section text = asmProg.getCurrSection();
 
         Register arrayLocReg = null;
@@ -85,12 +86,12 @@ public class AddrGen implements ASTVisitor<Register> {
 
         // load elementsize into a register
         int elementSize = SizeHelper.sizeOf(aa.type);
-        Register elemSizeReg = new Register.Virtual();
+        Register elemSizeReg = new Register.Virtual(asmProg.session);
         text.emitLI(elemSizeReg, elementSize);
 
         // cal the offset and put it in a regiter
         // offset = elementsize * idx
-        Register offsetReg = new Register.Virtual();
+        Register offsetReg = new Register.Virtual(asmProg.session);
         text.emit("mul", offsetReg, elemSizeReg, idxReg);
 
         text.emit("add", resReg, arrayLocReg, offsetReg); // get the elem location
@@ -124,7 +125,7 @@ public class AddrGen implements ASTVisitor<Register> {
 
     @Override
     public Register visitFieldAccessExpr(FieldAccessExpr fa) {
-        Register resReg = new Register.Virtual();
+        Register resReg = new Register.Virtual(asmProg.session);
         AssemblyProgram.Section text = asmProg.getCurrSection();
 
         // get the basic address of the struct
@@ -132,21 +133,7 @@ public class AddrGen implements ASTVisitor<Register> {
 
         // cal the offset
         StructTypeDecl std = ((StructType) fa.structure.type).getStd();
-        int offset = 0;
-//        for (int i = std.varDecls.size() - 1; i >= 0; i--) {
-//            if (fa.fieldName.equals(std.varDecls.get(i).varName)) {
-//                break;
-//            } else {
-//                offset += std.varDecls.get(i).size();
-//            }
-//        }
-        for (VarDecl varDecl : std.varDecls) {
-            if (fa.fieldName.equals(varDecl.varName)) {
-                break;
-            } else {
-                offset -= varDecl.size();
-            }
-        }
+        int offset = StructLayout.of(std).offsetOf(fa.fieldName);
         text.emit("field access address");
         text.emit("add", resReg, structAddrReg, offset);
         return resReg;
@@ -201,7 +188,7 @@ public class AddrGen implements ASTVisitor<Register> {
     public Register visitValueAtExpr(ValueAtExpr va) {
         AssemblyProgram.Section text = asmProg.getCurrSection();
         Register addrOfPointer = va.expr.accept(this);
-        Register resReg = new Register.Virtual();
+        Register resReg = new Register.Virtual(asmProg.session);
         text.emitLoad("lw", resReg, addrOfPointer, 0);
         return resReg;
     }
@@ -1,30 +1,16 @@
 package gen;
 
-import util.ToFile;
-
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
-
-import static util.ToFile.writeTo;
 
 public class CFGDotPrinter extends BaseCFGNodeVisitor<Void> {
 
     public DotGraph dg = new DotGraph();
-    public String path;
-
-    public CFGDotPrinter(String path) {
-        this.path = path;
-    }
-
-    public CFGDotPrinter() {
-        this.path = "dot.gv";
-    }
 
-    public void run(CFGNode node) {
+    // the CFG reachable from the node, in dot
+    public String print(CFGNode node) {
         visitNode(node);
-        writeTo(path, dg.toString());
+        return dg.toString();
     }
 
     @Override
@@ -1,5 +1,6 @@
 package gen;
 
+import compiler.CompilationSession;
 import gen.asm.AssemblyItem;
 import gen.asm.Register;
 
@@ -7,8 +8,7 @@ import java.util.*;
 import java.util.stream.Collectors;
 
 public class CFGNode {
-    private static long id = 0;
-    private long myid = id++;
+    private final long myid;
     private List<CFGNode> succs = new LinkedList();
     private List<CFGNode> preds = new LinkedList();
     private List<AssemblyItem.Instruction> ins;
@@ -19,11 +19,13 @@ public class CFGNode {
     private Set<Register> liveOut = new HashSet<>();
     private boolean entryNode = false;
 
-    public CFGNode(AssemblyItem.Instruction instruction) {
+    public CFGNode(AssemblyItem.Instruction instruction, CompilationSession session) {
+        this.myid = session.nextCFGNodeId();
         this.instruction = instruction;
     }
 
-    public CFGNode(Boolean entryNode) {
+    public CFGNode(Boolean entryNode, CompilationSession session) {
+        this.myid = session.nextCFGNodeId();
         this.entryNode = entryNode;
     }
 
@@ -1,50 +1,340 @@
 package gen;
 
 import ast.*;
+import compiler.CompilationSession;
+import compiler.CompilationStats;
+import compiler.CompilationStats.Counter;
+import compiler.CompilationStats.Phase;
+import compiler.IRDump;
+import gen.asm.AssemblyItem;
 import gen.asm.AssemblyProgram;
 import regalloc.SmartRegAlloc;
-import sem.TypeCheckVisitor;
+import util.OutputFile;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.util.LinkedList;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 public class CodeGenerator {
 
+    private static final int BUFFER = 1 << 16;
 
+    // numbers the registers, labels and generated names
+    private final CompilationSession session;
+    // the code of the functions unchanged since an earlier compilation is reused from it, if not null
+    private FunctionCache functions;
+
+    public CodeGenerator() {
+        this(new CompilationSession());
+    }
+
+    public CodeGenerator(CompilationSession session) {
+        this.session = session;
+    }
+
+    public void setFunctionCache(FunctionCache functions) {
+        this.functions = functions;
+    }
+
+    /*
+     * Writes the program through OutputFile: into a regular file only once it is complete.
+     */
     public void emitProgram(Program astProgram, File outputFile) throws FileNotFoundException {
+        try {
+            OutputFile.write(outputFile, out -> {
+                PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out), BUFFER));
+                emitProgram(astProgram, writer);
+                writer.flush();
+            });
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*
+     * Writes each function as soon as it is allocated, in the order AssemblyProgram.print would: the code of
+     * the whole program is only held before the allocation, then one function at a time.
+     */
+    public void emitProgram(Program astProgram, PrintWriter writer) {
+        if (functions != null) {
+            emitIncrementally(astProgram, writer);
+            writer.flush();
+            return;
+        }
+        CompilationStats stats = session.getStats();
+        AssemblyProgram asmProgWithVirtualRegs = generate(astProgram);
+        LivenessAnalyzer liveness = new LivenessAnalyzer(asmProgWithVirtualRegs);
+
+        // the allocated program starts with an empty data section
+        stats.begin(Phase.EMISSION);
+        new AssemblyProgram.Section(AssemblyProgram.Section.Type.DATA).print(writer);
+        writer.println();
+        stats.end();
+
+        Iterator<AssemblyProgram.Section> sections = asmProgWithVirtualRegs.sections.iterator();
+        boolean flushed = false;
+        while (sections.hasNext()) {
+            AssemblyProgram.Section section = sections.next();
+            sections.remove(); // done with once emitted
+            if (section.type == AssemblyProgram.Section.Type.DATA) {
+                stats.begin(Phase.EMISSION);
+                section.print(writer);
+                writer.println();
+                stats.end();
+                continue;
+            }
+
+            // run liveness analysis
+            stats.begin(Phase.LIVENESS);
+            CFGNode entry = liveness.analyze(section);
+            stats.end();
+
+            // Inf Graph, built and coloured
+            stats.begin(Phase.INTERFERENCE);
+            InterferenceGraph infGraph = new InterferenceGraph(entry, session);
+            stats.end();
+            stats.count(Counter.INTERFERENCE_EDGES, infGraph.edgeCount());
+            stats.count(Counter.SPILLED_REGISTERS, infGraph.spillNodes.size());
+            dumpInterference(LivenessAnalyzer.functionName(section), infGraph);
+
+            // run the register allocator which removes the virtual registers
+            stats.begin(Phase.REGISTER_ALLOCATION);
+            List<AssemblyProgram.Section> allocated = SmartRegAlloc.allocate(section, infGraph);
+            stats.end();
+
+            stats.begin(Phase.EMISSION);
+            for (AssemblyProgram.Section allocatedSection : allocated) {
+                allocatedSection.print(writer);
+                writer.println();
+            }
+            if (!flushed) {
+                // a reader of a pipe gets the first function as soon as it is allocated, not when the buffer fills
+                writer.flush();
+                flushed = true;
+            }
+            stats.end();
+        }
+        stats.count(Counter.CFG_NODES, session.cfgNodeCount());
+        stats.count(Counter.LIVENESS_ITERATIONS, liveness.getIterations());
+        writer.flush();
+    }
+
+    // the program with virtual registers
+    private AssemblyProgram generate(Program astProgram) {
+        CompilationStats stats = session.getStats();
+        stats.begin(Phase.CODE_GENERATION);
         // DPS for return struct
-        astProgram.accept(new ReturnStructVisitor());
+        astProgram.accept(new ReturnStructVisitor(session));
         astProgram.accept(new AllocationLocationVisitor());
-        astProgram.accept(new TypeCheckVisitor());
+        // the types computed by the semantic analysis are still valid, ReturnStructVisitor types the nodes it adds
 
         // generate an assembly program with the code generator
-        AssemblyProgram asmProgWithVirtualRegs = new AssemblyProgram();
+        AssemblyProgram asmProgWithVirtualRegs = new AssemblyProgram(session);
 
 
         ProgramGen progGen = new ProgramGen(asmProgWithVirtualRegs); // global variable declaration
         progGen.visitProgram(astProgram);
+        stats.end();
+        stats.count(Counter.VIRTUAL_REGISTERS, session.registerCount());
+        return asmProgWithVirtualRegs;
+    }
+
+    /*
+     * What emitProgram gives without a cache, the same to the byte, but the functions found in it are not
+     * generated again: their code is numbered past, and their templates printed in their place. The others
+     * go through all the phases, and are cached. So do the functions with a dump of their code to write.
+     * Every function is generated or looked up first, for the numbering, then the misses are analysed,
+     * allocated, cached and emitted one at a time as emitProgram does.
+     */
+    private void emitIncrementally(Program astProgram, PrintWriter writer) {
+        CompilationStats stats = session.getStats();
+        stats.begin(Phase.CODE_GENERATION);
+        IRDump dump = session.getDump();
+        List<FunDecl> funDecls = astProgram.funDecls;
+        int n = funDecls.size();
+        String[] keys = new String[n];
+        for (int i = 0; i < n; i++) {
+            try {
+                keys[i] = functions.key(astProgram, funDecls.get(i));
+            } catch (IOException e) {
+                keys[i] = null; // generated, and not cached
+            }
+        }
+        astProgram.accept(new ReturnStructVisitor(session));
+        astProgram.accept(new AllocationLocationVisitor());
+
+        AssemblyProgram asmProg = new AssemblyProgram(session);
+        ProgramGen progGen = new ProgramGen(asmProg);
+        astProgram.varDecls.forEach(vd -> vd.accept(progGen));
+        List<AssemblyItem> data = asmProg.getDataSection().items;
+        int globals = data.size();
+        FunctionCache.Names names = new FunctionCache.Names(astProgram);
+
+        // where the numbering of each function starts, as in a clean compilation
+        FunctionCache.Code[] cached = new FunctionCache.Code[n];
+        int[] firstLabel = new int[n + 1];
+        int[] firstRegister = new int[n + 1];
+        int[] firstSpill = new int[n];
+        int[] spills = new int[n];
+        // the string literals of each generated function in the data section
+        int[] dataFrom = new int[n];
+        int[] dataTo = new int[n];
+        Map<AssemblyProgram.Section, Integer> generated = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            FunDecl fd = funDecls.get(i);
+            firstLabel[i] = session.labelCount();
+            firstRegister[i] = session.registerCount();
+            try {
+                cached[i] = keys[i] == null || dump.wantsCode(fd.name) ? null : functions.lookup(keys[i], names);
+            } catch (IOException e) {
+                cached[i] = null;
+            }
+            if (cached[i] != null) {
+                // the label of the function comes first, as FunGen gives it out
+                fd.label = fd.name.equals("main") ? new AssemblyItem.MainLabel(session) : new AssemblyItem.Label(session, fd.name);
+                session.skipLabels(cached[i].labels - 1);
+                session.skipRegisters(cached[i].registers);
+                stats.count(Counter.FUNCTION_HITS, 1);
+            } else {
+                dataFrom[i] = data.size();
+                fd.accept(progGen);
+                dataTo[i] = data.size();
+                generated.put(asmProg.getCurrSection(), i);
+                stats.count(Counter.FUNCTION_MISSES, 1);
+            }
+            names.add(fd);
+        }
+        firstLabel[n] = session.labelCount();
+        firstRegister[n] = session.registerCount();
+        stats.end();
+        stats.count(Counter.VIRTUAL_REGISTERS, session.registerCount());
 
-        // run liveness analysis
-        List<CFGNode> entrys = new LivenessAnalyzer(asmProgWithVirtualRegs).run();
-        // Inf Graph
-        List<InterferenceGraph> infGraphs = new LinkedList<>();
-        for (CFGNode entry : entrys) {
-            infGraphs.add(new InterferenceGraph(entry));
+        // the text section of each generated function
+        AssemblyProgram.Section[] text = new AssemblyProgram.Section[n];
+        for (AssemblyProgram.Section section : asmProg.sections) {
+            if (section.type == AssemblyProgram.Section.Type.TEXT)
+                text[generated.get(section)] = section;
         }
+        asmProg.sections.clear(); // each function is let go of once emitted
+        LivenessAnalyzer liveness = new LivenessAnalyzer(asmProg);
 
-        // run the register naive allocator which remove the virtual registers
-//        AssemblyProgram asmProgNoVirtualRegs = NaiveRegAlloc.run(asmProgWithVirtualRegs);
-        AssemblyProgram asmProgNoVirtualRegs = SmartRegAlloc.run(asmProgWithVirtualRegs, infGraphs);
+        // laid out as AssemblyProgram.print, main and the data section come first, and the spill labels are
+        // given out in that order
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (funDecls.get(i).name.equals("main"))
+                order.add(0, i);
+            else
+                order.add(i);
+        }
+        stats.begin(Phase.EMISSION);
+        new AssemblyProgram.Section(AssemblyProgram.Section.Type.DATA).print(writer);
+        writer.println();
+        stats.end();
+        boolean dataPrinted = false;
+        boolean flushed = false;
+        for (int i : order) {
+            if (!funDecls.get(i).name.equals("main") && !dataPrinted) {
+                stats.begin(Phase.EMISSION);
+                printData(writer, data, globals, cached, dataFrom, dataTo, firstLabel, firstRegister, names);
+                stats.end();
+                dataPrinted = true;
+            }
+            firstSpill[i] = session.labelCount();
+            if (cached[i] != null) {
+                session.skipLabels(cached[i].spills);
+                spills[i] = cached[i].spills;
+                stats.begin(Phase.EMISSION);
+                writer.print(FunctionCache.render(cached[i].sections, firstLabel[i], firstRegister[i], firstSpill[i], names));
+                stats.end();
+                continue;
+            }
+
+            // a miss goes through the phases of emitProgram on its own
+            stats.begin(Phase.LIVENESS);
+            CFGNode entry = liveness.analyze(text[i]);
+            stats.end();
+
+            stats.begin(Phase.INTERFERENCE);
+            InterferenceGraph infGraph = new InterferenceGraph(entry, session);
+            stats.end();
+            spills[i] = session.labelCount() - firstSpill[i];
+            stats.count(Counter.INTERFERENCE_EDGES, infGraph.edgeCount());
+            stats.count(Counter.SPILLED_REGISTERS, infGraph.spillNodes.size());
+            dumpInterference(funDecls.get(i).name, infGraph);
 
-        // print the assembly program
-        PrintWriter writer = new PrintWriter(outputFile);
-        asmProgNoVirtualRegs.print(writer);
-//        asmProgWithVirtualRegs.print(writer);
-        writer.close();
+            stats.begin(Phase.REGISTER_ALLOCATION);
+            List<AssemblyProgram.Section> allocated = SmartRegAlloc.allocate(text[i], infGraph);
+            stats.end();
+            text[i] = null;
+
+            stats.begin(Phase.EMISSION);
+            if (keys[i] != null) {
+                FunctionCache.Code code = FunctionCache.template(firstLabel[i], firstLabel[i + 1] - firstLabel[i],
+                        firstRegister[i], firstRegister[i + 1] - firstRegister[i], firstSpill[i], spills[i],
+                        data.subList(dataFrom[i], dataTo[i]), allocated, names);
+                try {
+                    if (code != null)
+                        functions.store(keys[i], code);
+                } catch (IOException e) {
+                    // not cached, generated again next time
+                }
+            }
+            for (AssemblyProgram.Section section : allocated) {
+                section.print(writer);
+                writer.println();
+            }
+            if (!flushed) {
+                writer.flush();
+                flushed = true;
+            }
+            stats.end();
+        }
+        if (!dataPrinted) {
+            stats.begin(Phase.EMISSION);
+            printData(writer, data, globals, cached, dataFrom, dataTo, firstLabel, firstRegister, names);
+            stats.end();
+        }
+        stats.count(Counter.CFG_NODES, session.cfgNodeCount());
+        stats.count(Counter.LIVENESS_ITERATIONS, liveness.getIterations());
     }
 
+    private void dumpInterference(String function, InterferenceGraph infGraph) {
+        IRDump dump = session.getDump();
+        if (dump.wants(IRDump.Kind.INTERFERENCE, function))
+            dump.write(IRDump.Kind.INTERFERENCE, function, infGraph.toDot());
+    }
 
+    /*
+     * The globals, then the string literals of each function, generated or cached, in order. It comes before
+     * the functions after main have been allocated: a string literal is never a spill label, so their first
+     * spill labels are not needed.
+     */
+    private static void printData(PrintWriter writer, List<AssemblyItem> data, int globals, FunctionCache.Code[] cached,
+                                  int[] dataFrom, int[] dataTo, int[] firstLabel, int[] firstRegister,
+                                  FunctionCache.Names names) {
+        writer.println(".data");
+        for (int i = 0; i < globals; i++)
+            writer.println(AssemblyProgram.Section.line(data.get(i)));
+        for (int i = 0; i < cached.length; i++) {
+            if (cached[i] != null) {
+                writer.print(FunctionCache.render(cached[i].data, firstLabel[i], firstRegister[i], 0, names));
+            } else {
+                for (int j = dataFrom[i]; j < dataTo[i]; j++)
+                    writer.println(AssemblyProgram.Section.line(data.get(j)));
+            }
+        }
+        writer.println();
+    }
 }
@@ -50,7 +50,7 @@ public class ExprGen implements ASTVisitor<Register> {
 
     @Override
     public Register visitVarExpr(VarExpr v) {
-        Register resReg = new Register.Virtual();
+        Register resReg = new Register.Virtual(asmProg.session);
         AssemblyProgram.Section text = asmProg.getCurrSection();
         if (v.varDecl.isGlobal) {
             text.emitLoad("lw", resReg, v.varDecl.label);
@@ -71,7 +71,7 @@ public class ExprGen implements ASTVisitor<Register> {
     public Register visitArrayAccessExpr(ArrayAccessExpr aa) {
         AssemblyProgram.Section text = asmProg.getCurrSection();
         Register elemAddr = aa.accept(new AddrGen(this.asmProg));
-        Register resReg = new Register.Virtual();
+        Register resReg = new Register.Virtual(asmProg.session);
         text.emit("ArrayAccess");
         text.emitLoad("lw", resReg, elemAddr, 0);
         return resReg;
@@ -115,7 +115,7 @@ public class ExprGen implements ASTVisitor<Register> {
     public Register visitBinOp(BinOp bo) {
         AssemblyProgram.Section text = asmProg.getCurrSection();
         Register lhsReg = bo.left.accept(this);
-        Register resReg = new Register.Virtual();
+        Register resReg = new Register.Virtual(asmProg.session);
         Register rhsReg;
         AssemblyItem.Label trueLabel;
         AssemblyItem.Label endLabel;
@@ -147,8 +147,8 @@ public class ExprGen implements ASTVisitor<Register> {
                 break;
             case OR:
                 text.emit("OR");
-                trueLabel = new AssemblyItem.Label();
-                endLabel = new AssemblyItem.Label();
+                trueLabel = new AssemblyItem.Label(asmProg.session);
+                endLabel = new AssemblyItem.Label(asmProg.session);
                 // lhsReg != 0, and this OR is true
                 text.emit("bne", lhsReg, Register.Arch.zero, trueLabel);
                 // else
@@ -165,8 +165,8 @@ public class ExprGen implements ASTVisitor<Register> {
                 text.emit(endLabel);
                 break;
             case AND:
-                AssemblyItem.Label falseLabel = new AssemblyItem.Label();
-                endLabel = new AssemblyItem.Label();
+                AssemblyItem.Label falseLabel = new AssemblyItem.Label(asmProg.session);
+                endLabel = new AssemblyItem.Label(asmProg.session);
                 text.emit("beq", lhsReg, Register.Arch.zero, falseLabel);
 
                 rhsReg = bo.right.accept(this);
@@ -208,7 +208,7 @@ public class ExprGen implements ASTVisitor<Register> {
     public Register visitChrLiteral(ChrLiteral cl) {
         // put it in the data section
         AssemblyProgram.Section text = asmProg.getCurrSection();
-        Register resReg = new Register.Virtual();
+        Register resReg = new Register.Virtual(asmProg.session);
         int charAsciiCode = (int) cl.c;
         text.emitLI(resReg, charAsciiCode);
 
@@ -218,7 +218,7 @@ public class ExprGen implements ASTVisitor<Register> {
     @Override
     public Register visitFieldAccessExpr(FieldAccessExpr fa) {
         AssemblyProgram.Section text = asmProg.getCurrSection();
-        Register resReg = new Register.Virtual();
+        Register resReg = new Register.Virtual(asmProg.session);
 
         Register addrReg = fa.accept(new AddrGen(this.asmProg));
         text.emitLoad("lw", resReg, addrReg, 0);
@@ -254,7 +254,7 @@ public class ExprGen implements ASTVisitor<Register> {
             text.emit("read_c");
             text.emitLI(Register.Arch.v0, 12);
             text.emitSyscall();
-            Register resReg = new Register.Virtual();
+            Register resReg = new Register.Virtual(asmProg.session);
             text.emitMOVE(resReg, Register.Arch.v0);
             return resReg;
         } else if (fc.funDecl.name.equals("read_i")) {
@@ -262,7 +262,7 @@ public class ExprGen implements ASTVisitor<Register> {
             text.emit("read_i");
             text.emitLI(Register.Arch.v0, 5);
             text.emitSyscall();
-            Register resReg = new Register.Virtual();
+            Register resReg = new Register.Virtual(asmProg.session);
             text.emitMOVE(resReg, Register.Arch.v0);
             return resReg;
         } else {
@@ -283,7 +283,7 @@ public class ExprGen implements ASTVisitor<Register> {
                     int size = SizeHelper.sizeOf(fc.args.get(i).type);
                     text.emit("addi", Register.Arch.sp, Register.Arch.sp, -size);
                     for (int j = 0; j < size; j += 1) {
-                        Register v = new Register.Virtual();
+                        Register v = new Register.Virtual(asmProg.session);
                         text.emitLoad("lb", v, addrReg, j + 4 - size);
                         text.emitStore("sb", v, Register.Arch.sp, j);
                     }
@@ -318,7 +318,7 @@ public class ExprGen implements ASTVisitor<Register> {
              */
 
             text.emit("postreturn");
-            Register resReg = new Register.Virtual();
+            Register resReg = new Register.Virtual(asmProg.session);
             // 1) restore return address from the stack
             text.emitLoad("lw", Register.Arch.ra, Register.Arch.sp, 0);
             // 2) read the return value from dedicated register or stack
@@ -344,7 +344,7 @@ public class ExprGen implements ASTVisitor<Register> {
 
     @Override
     public Register visitIntLiteral(IntLiteral il) {
-        Register v = new Register.Virtual();
+        Register v = new Register.Virtual(asmProg.session);
         AssemblyProgram.Section text = asmProg.getCurrSection();
         text.emit("IntLiteral");
         text.emitLI(v, il.i);
@@ -364,7 +364,7 @@ public class ExprGen implements ASTVisitor<Register> {
     @Override
     public Register visitSizeOfExpr(SizeOfExpr so) {
         AssemblyProgram.Section text = asmProg.getCurrSection();
-        Register resReg = new Register.Virtual();
+        Register resReg = new Register.Virtual(asmProg.session);
         int size = SizeHelper.sizeOf(so.t);
         text.emitLI(resReg, size);
         return resReg;
@@ -372,10 +372,10 @@ public class ExprGen implements ASTVisitor<Register> {
 
     @Override
     public Register visitStrLiteral(StrLiteral sl) {
-        sl.setLabel(new AssemblyItem.Label());
+        sl.setLabel(new AssemblyItem.Label(asmProg.session));
         asmProg.getDataSection().emit(new AssemblyItem.Directive.StringAllocation(sl));
         asmProg.getCurrSection().emit("load strLiteral into register");
-        Register resReg = new Register.Virtual();
+        Register resReg = new Register.Virtual(asmProg.session);
         asmProg.getCurrSection().emitLoad("la", resReg, sl.getLabel());
         return resReg;
     }
@@ -393,7 +393,7 @@ public class ExprGen implements ASTVisitor<Register> {
     @Override
     public Register visitValueAtExpr(ValueAtExpr va) {
         AssemblyProgram.Section text = asmProg.getCurrSection();
-        Register resReg = new Register.Virtual();
+        Register resReg = new Register.Virtual(asmProg.session);
         Register addrReg = va.expr.accept(this);
         text.emit("value at");
         text.emitLoad("lw", resReg, addrReg, 0);
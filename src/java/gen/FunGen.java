@@ -64,10 +64,10 @@ public class FunGen implements ASTVisitor<Void> {
         // This is is necessary for the register allocator.
         if (p.name.equals("main")) {
             text = asmProg.newMainSection(AssemblyProgram.Section.Type.TEXT);
-            p.label = new AssemblyItem.MainLabel();
+            p.label = new AssemblyItem.MainLabel(asmProg.session);
         } else {
             text = asmProg.newSection(AssemblyProgram.Section.Type.TEXT);
-            p.label = new AssemblyItem.Label(p.name);
+            p.label = new AssemblyItem.Label(asmProg.session, p.name);
         }
         text.emit(p.label);
 
@@ -137,7 +137,7 @@ public class FunGen implements ASTVisitor<Void> {
     @Override
     public Void visitVarDecl(VarDecl vd) {
         if (vd.isRegister) {
-            vd.setRegister(new Register.Virtual());
+            vd.setRegister(new Register.Virtual(asmProg.session));
         } else {
             text.emit("STACK ALLOCATE");
             text.emit("addi", Register.Arch.sp, Register.Arch.sp, -vd.size());
@@ -173,8 +173,8 @@ public class FunGen implements ASTVisitor<Void> {
          end_branch:
          .....
          */
-        AssemblyItem.Label endLabel = new AssemblyItem.Label("while_end");
-        AssemblyItem.Label beginLabel = new AssemblyItem.Label("while_begin");
+        AssemblyItem.Label endLabel = new AssemblyItem.Label(asmProg.session, "while_end");
+        AssemblyItem.Label beginLabel = new AssemblyItem.Label(asmProg.session, "while_begin");
         text.emit(beginLabel);
         Register condReg = wh.condition.accept(new ExprGen(asmProg)); // condition
         text.emit("beq", Register.Arch.zero, condReg, endLabel); //if condition is zero to go end
@@ -199,8 +199,8 @@ public class FunGen implements ASTVisitor<Void> {
 
         end_label:
          */
-        AssemblyItem.Label elseLabel = new AssemblyItem.Label("if_else");
-        AssemblyItem.Label endLabel = new AssemblyItem.Label("if_end");
+        AssemblyItem.Label elseLabel = new AssemblyItem.Label(asmProg.session, "if_else");
+        AssemblyItem.Label endLabel = new AssemblyItem.Label(asmProg.session, "if_end");
         Register condReg = iff.condition.accept(new ExprGen(asmProg)); // condition
         text.emit("beq", Register.Arch.zero, condReg, elseLabel); //if condition is zero go to else_label
         // if branch's body
@@ -0,0 +1,362 @@
+package gen;
+
+import ast.ASTNode;
+import ast.ASTPrinter;
+import ast.FunDecl;
+import ast.Program;
+import ast.StructTypeDecl;
+import ast.VarDecl;
+import compiler.CompileCache;
+import gen.asm.AssemblyItem;
+import gen.asm.AssemblyItem.Label;
+import gen.asm.AssemblyProgram;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The register-allocated code of the functions of earlier compilations, kept in a CompileCache directory,
+ * so that only the functions which changed are compiled again. A function is keyed by its fingerprint: its
+ * AST, with the declarations of the globals, the functions and the structs it may refer to (found by
+ * name, which can only bring in more than it refers to), and the version of the compiler.
+ *
+ * The labels of the code depend on the rest of the program: they are numbered in the order of the
+ * functions, and the labels of the spilled registers after all the others, in the order of the sections,
+ * and are named after the virtual registers, numbered in the order of the functions too. So the code is
+ * kept as a template in which each label is relative to the first label (or register) of the function, or
+ * names the global or the function it stands for, and it is renumbered as a clean compilation would
+ * number it each time it is reused.
+ */
+public class FunctionCache {
+
+    private static final Pattern VARIABLES = Pattern.compile("VarExpr\\(([^)]*)\\)");
+    private static final Pattern CALLS = Pattern.compile("FunCallExpr\\(([^,)]*)");
+    private static final Pattern STRUCTS = Pattern.compile("StructType\\(([^)]*)\\)");
+    private static final Pattern STRING_LABEL = Pattern.compile("label_(\\d+)_:");
+
+    private static final int MAGIC = 0x4d434647; // "MCFG"
+    // a reference in a template is enclosed in marks, which the code itself never contains
+    private static final char MARK = '\0';
+
+    private final CompileCache cache;
+
+    public FunctionCache(CompileCache cache) {
+        this.cache = cache;
+    }
+
+    /*
+     * The code of a function, from where its numbering starts: its first label, its first virtual register
+     * and its first spill label.
+     */
+    static class Code {
+        final int labels;
+        final int registers;
+        final int spills;
+        final String data;     // its string literals, in the data section of the program
+        final String sections; // the data section of its spilled registers, then its text section
+
+        Code(int labels, int registers, int spills, String data, String sections) {
+            this.labels = labels;
+            this.registers = registers;
+            this.spills = spills;
+            this.data = data;
+            this.sections = sections;
+        }
+    }
+
+    /*
+     * The globals and the functions of the program the templates may refer to, by name, with their labels:
+     * the globals, and the functions as their labels are given out, in order.
+     */
+    static class Names {
+        final Map<Label, String> globals = new HashMap<>();
+        final Map<Label, String> functions = new HashMap<>();
+        final Map<String, Label> globalLabels = new HashMap<>();
+        final Map<String, Label> functionLabels = new HashMap<>();
+
+        Names(Program program) {
+            for (VarDecl vd : program.varDecls) {
+                globals.put(vd.label, vd.varName);
+                globalLabels.put(vd.varName, vd.label);
+            }
+        }
+
+        void add(FunDecl fd) {
+            functions.put(fd.label, fd.name);
+            functionLabels.put(fd.name, fd.label);
+        }
+    }
+
+    /*
+     * Must be called before the code generation, which rewrites the AST.
+     */
+    String key(Program program, FunDecl fd) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        String function = print(fd);
+        sb.append(function).append('\n');
+
+        Map<String, String> structs = new TreeMap<>();
+        Map<String, StructTypeDecl> structDecls = new HashMap<>();
+        for (StructTypeDecl std : program.structTypeDecls)
+            structDecls.put(std.type.name, std);
+        TreeSet<String> structNames = new TreeSet<>(names(STRUCTS, function));
+
+        TreeSet<String> variables = names(VARIABLES, function);
+        for (VarDecl vd : program.varDecls) {
+            if (variables.contains(vd.varName)) {
+                String global = print(vd);
+                sb.append("global ").append(global).append('\n');
+                structNames.addAll(names(STRUCTS, global));
+            }
+        }
+        TreeSet<String> calls = names(CALLS, function);
+        for (FunDecl callee : program.funDecls) {
+            if (calls.contains(callee.name) && callee != fd) {
+                StringBuilder signature = new StringBuilder(print(callee.type));
+                for (VarDecl param : callee.params)
+                    signature.append(' ').append(print(param));
+                sb.append("callee ").append(callee.name).append(' ').append(signature).append('\n');
+                structNames.addAll(names(STRUCTS, signature.toString()));
+            }
+        }
+        // the structs the others are made of too
+        while (!structNames.isEmpty()) {
+            String name = structNames.pollFirst();
+            StructTypeDecl std = structDecls.get(name);
+            if (std == null || structs.containsKey(name))
+                continue;
+            String struct = print(std);
+            structs.put(name, struct);
+            structNames.addAll(names(STRUCTS, struct));
+        }
+        for (String struct : structs.values())
+            sb.append("struct ").append(struct).append('\n');
+
+        return cache.key(sb.toString().getBytes(StandardCharsets.UTF_8), null,
+                List.of("function", System.lineSeparator()), false);
+    }
+
+    private static String print(ASTNode node) {
+        StringWriter sw = new StringWriter();
+        PrintWriter writer = new PrintWriter(sw);
+        node.accept(new ASTPrinter(writer));
+        writer.flush();
+        return sw.toString();
+    }
+
+    private static TreeSet<String> names(Pattern pattern, String s) {
+        TreeSet<String> names = new TreeSet<>();
+        Matcher matcher = pattern.matcher(s);
+        while (matcher.find())
+            names.add(matcher.group(1));
+        return names;
+    }
+
+    /*
+     * The code stored for the key, null if there is none, or if it refers to globals or functions the
+     * program does not have.
+     */
+    Code lookup(String key, Names names) throws IOException {
+        byte[] bytes = cache.lookup(key);
+        if (bytes == null)
+            return null;
+        Code code;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (in.readInt() != MAGIC)
+                return null;
+            code = new Code(in.readInt(), in.readInt(), in.readInt(), readString(in), readString(in));
+        } catch (IOException e) {
+            return null; // truncated
+        }
+        if (render(code.data, 0, 0, 0, names) == null || render(code.sections, 0, 0, 0, names) == null)
+            return null;
+        return code;
+    }
+
+    void store(String key, Code code) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(code.labels);
+            out.writeInt(code.registers);
+            out.writeInt(code.spills);
+            writeString(out, code.data);
+            writeString(out, code.sections);
+        }
+        cache.store(key, bytes.toByteArray());
+    }
+
+    // writeUTF is limited to 64KB
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /*
+     * The template of the code of a function as generated, numbered from firstLabel, firstRegister and
+     * firstSpill. Returns null if a label cannot be told apart, the function is then not cached.
+     */
+    static Code template(int firstLabel, int labels, int firstRegister, int registers, int firstSpill, int spills,
+                         List<AssemblyItem> data, List<AssemblyProgram.Section> sections, Names names) {
+        Numbering numbering = new Numbering(firstLabel, labels, firstRegister, registers, firstSpill, spills);
+
+        StringWriter dataTemplate = new StringWriter();
+        PrintWriter writer = new PrintWriter(dataTemplate);
+        for (AssemblyItem item : data) {
+            String line = AssemblyProgram.Section.line(item);
+            Matcher matcher = STRING_LABEL.matcher(line);
+            if (line.indexOf(MARK) >= 0 || !matcher.lookingAt())
+                return null;
+            int id = Integer.parseInt(matcher.group(1));
+            if (!numbering.isLabel(id))
+                return null;
+            writer.println(reference('c', id - firstLabel, "") + line.substring(matcher.end(1) + 1));
+        }
+        writer.flush();
+
+        StringWriter sectionsTemplate = new StringWriter();
+        writer = new PrintWriter(sectionsTemplate);
+        for (AssemblyProgram.Section section : sections) {
+            writer.println(section.type == AssemblyProgram.Section.Type.DATA ? ".data" : ".text");
+            for (AssemblyItem item : section.items) {
+                String line = AssemblyProgram.Section.line(item);
+                if (line.indexOf(MARK) >= 0)
+                    return null;
+                Label label = label(item);
+                if (label != null && !(label instanceof AssemblyItem.MainLabel)) {
+                    String reference = numbering.reference(label, names);
+                    int at = item instanceof Label ? 0 : line.lastIndexOf(label.toString());
+                    if (reference == null || at < 0)
+                        return null;
+                    line = line.substring(0, at) + reference + line.substring(at + label.toString().length());
+                }
+                writer.println(line);
+            }
+            writer.println();
+        }
+        writer.flush();
+        return new Code(labels, registers, spills, dataTemplate.toString(), sectionsTemplate.toString());
+    }
+
+    // the label an item defines or refers to
+    private static Label label(AssemblyItem item) {
+        if (item instanceof Label)
+            return (Label) item;
+        if (item instanceof AssemblyItem.Instruction.Branch)
+            return ((AssemblyItem.Instruction.Branch) item).label;
+        if (item instanceof AssemblyItem.Instruction.SingleBranchInstruction)
+            return ((AssemblyItem.Instruction.SingleBranchInstruction) item).label;
+        if (item instanceof AssemblyItem.Instruction.LA)
+            return ((AssemblyItem.Instruction.LA) item).label;
+        if (item instanceof AssemblyItem.Instruction.LW)
+            return ((AssemblyItem.Instruction.LW) item).label;
+        if (item instanceof AssemblyItem.Instruction.LabelLoad)
+            return ((AssemblyItem.Instruction.LabelLoad) item).label;
+        if (item instanceof AssemblyItem.Instruction.LabelStore)
+            return ((AssemblyItem.Instruction.LabelStore) item).label;
+        return null;
+    }
+
+    private static String reference(char kind, Object... parts) {
+        StringBuilder sb = new StringBuilder().append(MARK).append(kind);
+        for (int i = 0; i < parts.length; i++)
+            sb.append(i == 0 ? "" : ":").append(parts[i]);
+        return sb.append(MARK).toString();
+    }
+
+    private static class Numbering {
+        final int firstLabel, labels, firstRegister, registers, firstSpill, spills;
+
+        Numbering(int firstLabel, int labels, int firstRegister, int registers, int firstSpill, int spills) {
+            this.firstLabel = firstLabel;
+            this.labels = labels;
+            this.firstRegister = firstRegister;
+            this.registers = registers;
+            this.firstSpill = firstSpill;
+            this.spills = spills;
+        }
+
+        boolean isLabel(int id) {
+            return id >= firstLabel && id < firstLabel + labels;
+        }
+
+        // null if the label is none of the function's, nor a global, nor a function
+        String reference(Label label, Names names) {
+            int id = label.getId();
+            if (isLabel(id))
+                return FunctionCache.reference('c', id - firstLabel, label.getName());
+            if (id >= firstSpill && id < firstSpill + spills) {
+                // named after its virtual register
+                String name = label.getName();
+                if (!name.startsWith("v"))
+                    return null;
+                int register = Integer.parseInt(name.substring(1));
+                if (register < firstRegister || register >= firstRegister + registers)
+                    return null;
+                return FunctionCache.reference('s', id - firstSpill, register - firstRegister);
+            }
+            if (names.globals.containsKey(label))
+                return FunctionCache.reference('g', names.globals.get(label));
+            if (names.functions.containsKey(label))
+                return FunctionCache.reference('f', names.functions.get(label));
+            return null;
+        }
+    }
+
+    /*
+     * The code of a template numbered from firstLabel, firstRegister and firstSpill, null if it refers to
+     * globals or functions the program does not have.
+     */
+    static String render(String template, int firstLabel, int firstRegister, int firstSpill, Names names) {
+        StringBuilder sb = new StringBuilder(template.length() + template.length() / 8);
+        int from = 0;
+        for (int mark = template.indexOf(MARK); mark >= 0; mark = template.indexOf(MARK, from)) {
+            int end = template.indexOf(MARK, mark + 1);
+            sb.append(template, from, mark);
+            char kind = template.charAt(mark + 1);
+            String reference = template.substring(mark + 2, end);
+            int colon = reference.indexOf(':');
+            switch (kind) {
+                case 'c':
+                    sb.append("label_").append(firstLabel + Integer.parseInt(reference.substring(0, colon)))
+                            .append('_').append(reference, colon + 1, reference.length());
+                    break;
+                case 's':
+                    sb.append("label_").append(firstSpill + Integer.parseInt(reference.substring(0, colon)))
+                            .append("_v").append(firstRegister + Integer.parseInt(reference.substring(colon + 1)));
+                    break;
+                case 'g':
+                case 'f':
+                    Label label = (kind == 'g' ? names.globalLabels : names.functionLabels).get(reference);
+                    if (label == null)
+                        return null;
+                    sb.append(label);
+                    break;
+                default:
+                    return null;
+            }
+            from = end + 1;
+        }
+        return sb.append(template, from, template.length()).toString();
+    }
+}
@@ -1,5 +1,6 @@
 package gen;
 
+import compiler.CompilationSession;
 import gen.asm.AssemblyItem;
 import gen.asm.Register;
 
@@ -10,8 +11,10 @@ public class InterferenceGraph {
     public List<Node> nodes = new LinkedList<>();
     public final static int K = Register.Arch.allocableArchs.length;
     public List<Node> spillNodes = new LinkedList<>();
+    private final CompilationSession session;
 
-    public InterferenceGraph(CFGNode entry) {
+    public InterferenceGraph(CFGNode entry, CompilationSession session) {
+        this.session = session;
         new BaseCFGNodeVisitor<Void>() {
             @Override
             public Void job(CFGNode node) {
@@ -63,7 +66,7 @@ public class InterferenceGraph {
             node.setAllocReg();
         }
 
-        spillNodes.forEach(node -> node.setLabel(new AssemblyItem.Label(node.vreg.toString())));
+        spillNodes.forEach(node -> node.setLabel(new AssemblyItem.Label(session, node.vreg.toString())));
     }
 
     public void addToGraph(Register[] regs) {
@@ -83,6 +86,30 @@ public class InterferenceGraph {
         }
     }
 
+    public int edgeCount() {
+        int degrees = 0;
+        for (Node node : nodes)
+            degrees += node.connects.size();
+        return degrees / 2;
+    }
+
+    // in dot, each virtual register with the register or the spill label it was given
+    public String toDot() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("graph {\n");
+        Set<Node> done = new HashSet<>();
+        for (Node node : nodes) {
+            sb.append("  \"").append(node.vreg).append("\" [label=\"").append(node.vreg).append(" ")
+                    .append(node.label != null ? node.label : node.allocReg).append("\"]\n");
+            node.connects.stream().filter(connect -> !done.contains(connect))
+                    .map(connect -> connect.vreg.toString()).sorted()
+                    .forEach(connect -> sb.append("  \"").append(node.vreg).append("\" -- \"").append(connect).append("\"\n"));
+            done.add(node);
+        }
+        sb.append("}\n");
+        return sb.toString();
+    }
+
     public void populate(Register reg) {
         if (!regNodeMap.containsKey(reg)) {
             Node node = new Node(reg);
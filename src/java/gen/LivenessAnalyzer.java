@@ -1,42 +1,97 @@
 package gen;
 
+import compiler.IRDump;
 import gen.asm.AssemblyItem;
 import gen.asm.AssemblyProgram;
 import gen.asm.Register;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
 public class LivenessAnalyzer {
 
     private AssemblyProgram asmProg;
     private LinkedList<CFGNode> CFGNodes = new LinkedList<>();
-    private LinkedList<String> CFGNames = new LinkedList<>();
+    private LinkedList<String> CFGNames = new LinkedList<>(); // the names of the functions
+    // the node each label is attached to, by the entry of its CFG
+    private Map<CFGNode, Map<AssemblyItem.Label, CFGNode>> labelNodes = new HashMap<>();
+    // passes over the CFGs until their liveness stops changing, for all the functions
+    private int iterations = 0;
 
     public LivenessAnalyzer(AssemblyProgram asmProg) {
         this.asmProg = asmProg;
     }
 
     public LinkedList<CFGNode> run() {
-        // build the basic CFG
         for (AssemblyProgram.Section section : asmProg.sections) {
             if (section.type == AssemblyProgram.Section.Type.TEXT) {
-                assert section.items.get(0) instanceof AssemblyItem.Label;
-                CFGNames.add(section.items.get(0).toString());
-                CFGNodes.add(buildCFG(section));
+                CFGNames.add(functionName(section));
+                CFGNodes.add(analyze(section));
             }
         }
+        return CFGNodes;
+    }
+
+    /*
+     * The CFG of the text section of one function, with its liveness. Nothing is kept of it, so that the
+     * functions can be analysed, allocated and emitted one at a time.
+     */
+    public CFGNode analyze(AssemblyProgram.Section section) {
+        // build the basic CFG
+        assert section.items.get(0) instanceof AssemblyItem.Label;
+        CFGNode entry = buildCFG(section);
 
         // draw the line for branch and jump
-        CFGNodes.forEach(this::handleBranchAndJump);
+        handleBranchAndJump(entry);
+        labelNodes.remove(entry);
 
-        //output the CFG in dot-lang
-        for (int i = 0; i < CFGNodes.size(); i++) {
-            new CFGDotPrinter("dot/" + CFGNames.get(i)).run(CFGNodes.get(i));
-        }
+        //output the CFG in dot-lang, if it is dumped
+        IRDump dump = asmProg.session.getDump();
+        String name = functionName(section);
+        if (dump.wants(IRDump.Kind.CFG, name))
+            dump.write(IRDump.Kind.CFG, name, new CFGDotPrinter().print(entry));
 
-        CFGNodes.forEach(this::livenessAnalyze);
-        
-        return CFGNodes;
+        livenessAnalyze(entry);
+
+        if (dump.wants(IRDump.Kind.LIVENESS, name))
+            dump.write(IRDump.Kind.LIVENESS, name, liveSets(entry));
+        return entry;
+    }
+
+    public static String functionName(AssemblyProgram.Section section) {
+        AssemblyItem.Label label = (AssemblyItem.Label) section.items.get(0);
+        return label instanceof AssemblyItem.MainLabel ? "main" : label.getName();
+    }
+
+    // the names of the functions, in the order of their CFGs
+    public List<String> getNames() {
+        return CFGNames;
+    }
+
+    // each instruction reachable from the entry, followed by the registers live before and after it
+    private static String liveSets(CFGNode entry) {
+        StringBuilder sb = new StringBuilder();
+        new BaseCFGNodeVisitor<Void>() {
+            @Override
+            public Void job(CFGNode node) {
+                if (!node.isEntryNode()) {
+                    sb.append(node).append('\n');
+                    sb.append("    in  ").append(registers(node.getLiveIn())).append('\n');
+                    sb.append("    out ").append(registers(node.getLiveOut())).append('\n');
+                }
+                node.getSuccs().forEach(this::visitNode);
+                return null;
+            }
+        }.visitNode(entry);
+        return sb.toString();
+    }
+
+    private static String registers(Set<Register> registers) {
+        return registers.stream().map(Register::toString).sorted().collect(Collectors.joining(" "));
+    }
+
+    public int getIterations() {
+        return iterations;
     }
 
     private void handleBranchAndJump(CFGNode entry) {
@@ -70,39 +125,28 @@ public class LivenessAnalyzer {
     }
 
     private CFGNode findLabelNode(CFGNode entry, AssemblyItem.Label label) {
-        return new BaseCFGNodeVisitor<CFGNode>() {
-            @Override
-            public CFGNode job(CFGNode node) {
-                if (node.getPreLabels().contains(label)) {
-                    return node;
-                } else {
-                    for (CFGNode succ : node.getSuccs()) {
-                        CFGNode ans = visitNode(succ);
-                        if (ans != null) {
-                            return ans;
-                        }
-                    }
-                    return null;
-                }
-            }
-        }.visitNode(entry);
+        return labelNodes.get(entry).get(label);
     }
 
     private CFGNode buildCFG(AssemblyProgram.Section section) {
-        CFGNode entry = new CFGNode(true);
+        CFGNode entry = new CFGNode(true, asmProg.session);
         CFGNode pred = entry;
         List<AssemblyItem.Label> accLabels = new LinkedList<>();
+        Map<AssemblyItem.Label, CFGNode> labels = new HashMap<>();
+        labelNodes.put(entry, labels);
         assert section.type == AssemblyProgram.Section.Type.TEXT;
         for (int i = 0; i < section.items.size(); i++) {
             AssemblyItem item = section.items.get(i);
             if (item instanceof AssemblyItem.Instruction) {
-                CFGNode cur = new CFGNode((AssemblyItem.Instruction) item);
+                CFGNode cur = new CFGNode((AssemblyItem.Instruction) item, asmProg.session);
                 cur.addPred(pred);
                 pred.addSucc(cur);
                 pred = cur;
 
                 if (accLabels.size() != 0) {
                     cur.setPreLabels(accLabels);
+                    for (AssemblyItem.Label label : accLabels)
+                        labels.putIfAbsent(label, cur);
                     accLabels.clear();
                 }
             } else if (item instanceof AssemblyItem.Label) {
@@ -114,6 +158,7 @@ public class LivenessAnalyzer {
 
     private void livenessAnalyze(CFGNode entry) {
         while (true) {
+            iterations++;
             final boolean[] updated = {false};
             new BaseCFGNodeVisitor<Void>() {
                 @Override
@@ -53,7 +53,7 @@ public class ProgramGen implements ASTVisitor<Void> {
     @Override
     public Void visitVarDecl(VarDecl vd) {
         // Global VarDecl
-        Label label = new Label(vd.varName);
+        Label label = new Label(asmProg.session, vd.varName);
         vd.setLabel(label);
         Directive directive = new Directive.StaticAllocation(vd);
         asmProg.getDataSection().emit(directive);
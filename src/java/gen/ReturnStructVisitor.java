@@ -1,20 +1,26 @@
 package gen;
 
 import ast.*;
+import compiler.CompilationSession;
 import sem.BaseSemanticVisitor;
 
 import java.util.Stack;
 
 public class ReturnStructVisitor implements ASTVisitor<Expr> {
-    static int uniqueId = 0;
+    private final CompilationSession session;
 
-    static String getUniqueName(String prefix) {
-        return prefix + "_return_struct_p" + uniqueId++;
+    public ReturnStructVisitor(CompilationSession session) {
+        this.session = session;
+    }
+
+    String getUniqueName(String prefix) {
+        return prefix + "_return_struct_p" + session.nextNameId();
     }
 
     Stack<Block> blocks = new Stack<>();
     Stack<Integer> blockIdxs = new Stack<>();
     FunDecl curFd;
+    TypeTable types;
 
     @Override
     public Expr visitBaseType(BaseType bt) {
@@ -45,7 +51,7 @@ public class ReturnStructVisitor implements ASTVisitor<Expr> {
     public Expr visitFunDecl(FunDecl p) {
         curFd = p;
         if (p.type instanceof StructType) {
-            p.params.add(new VarDecl(new PointerType(p.type), getUniqueName("decl_vd")));
+            p.params.add(new VarDecl(types.pointer(p.type), getUniqueName("decl_vd")));
             p.setType(BaseType.VOID);
         }
         p.block.accept(this);
@@ -54,6 +60,7 @@ public class ReturnStructVisitor implements ASTVisitor<Expr> {
 
     @Override
     public Expr visitProgram(Program p) {
+        types = p.types;
         p.funDecls.forEach(fd -> fd.accept(this));
         return null;
     }
@@ -122,8 +129,12 @@ public class ReturnStructVisitor implements ASTVisitor<Expr> {
         if (fc.type instanceof StructType) {
             VarDecl vd = new VarDecl(fc.type, getUniqueName("funcall_vd"));
             VarExpr ve = new VarExpr(vd, getUniqueName("funcall_ve"));
-//            ve.type = fc.funDecl.type; // manually add type info
-            fc.args.add(new AddressOfExpr(ve));
+            // the types of the nodes added here are filled in directly, there is no type checking after this pass
+            ve.type = vd.type;
+            AddressOfExpr ao = new AddressOfExpr(ve);
+            ao.type = types.pointer(vd.type);
+            fc.args.add(ao);
+            fc.type = BaseType.VOID;
 
             blocks.peek().varDecls.add(vd);
             blocks.peek().stmts.add(blockIdxs.peek(), new ExprStmt(fc));
@@ -162,7 +173,10 @@ public class ReturnStructVisitor implements ASTVisitor<Expr> {
                 re.setExpr(null); // return nothing
 
                 VarExpr ve = new VarExpr(curFd.params.get(curFd.params.size() - 1), getUniqueName("return_ve"));
-                blocks.peek().getStmts().add(blockIdxs.peek(), new Assign(new ValueAtExpr(ve), returnExpr));
+                ve.type = ve.varDecl.type;
+                ValueAtExpr va = new ValueAtExpr(ve);
+                va.type = returnExpr.type;
+                blocks.peek().getStmts().add(blockIdxs.peek(), new Assign(va, returnExpr));
                 blockIdxs.push(blockIdxs.pop() + 1);
             }
         }
@@ -1,5 +1,6 @@
 package gen;
 
+import compiler.CompilationSession;
 import gen.asm.AssemblyItem;
 import gen.asm.Register;
 import gen.asm.AssemblyProgram;
@@ -10,12 +11,12 @@ import java.io.PrintWriter;
 
 public class Test {
     public static void main(String[] args) {
-        AssemblyProgram prog = new AssemblyProgram();
+        AssemblyProgram prog = new AssemblyProgram(new CompilationSession());
 
         AssemblyProgram.Section text = prog.newSection(AssemblyProgram.Section.Type.TEXT);
-        Register v1 = new Register.Virtual();
-        Register v2 = new Register.Virtual();
-        Register v3 = new Register.Virtual();
+        Register v1 = new Register.Virtual(prog.session);
+        Register v2 = new Register.Virtual(prog.session);
+        Register v3 = new Register.Virtual(prog.session);
         text.emit(AssemblyItem.Instruction.pushRegisters);
         text.emit("addi", v1, Register.Arch.zero, 4);
         text.emit("addi", v2, Register.Arch.zero, 8);
@@ -2,6 +2,7 @@ package gen.asm;
 
 
 import ast.*;
+import compiler.CompilationSession;
 
 import java.util.*;
 
@@ -595,18 +596,26 @@ public abstract class AssemblyItem {
     }
 
     public static class Label extends AssemblyItem {
-        private static int cnt = 0;
-        private final int id = cnt++;
+        private final int id;
         private final String name;
 
-        public Label() {
-            this.name = "";
+        public Label(CompilationSession session) {
+            this(session, "");
         }
 
-        public Label(String name) {
+        public Label(CompilationSession session, String name) {
+            this.id = session.nextLabelId();
             this.name = name;
         }
 
+        public int getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
         public String toString() {
             return "label_" + id + "_" + name;
         }
@@ -630,6 +639,10 @@ public abstract class AssemblyItem {
     }
 
     public static class MainLabel extends Label {
+        public MainLabel(CompilationSession session) {
+            super(session);
+        }
+
         public String toString() {
             return "main";
         }
@@ -1,5 +1,7 @@
 package gen.asm;
 
+import compiler.CompilationSession;
+
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.LinkedList;
@@ -120,29 +122,16 @@ public class AssemblyProgram {
                 case DATA : writer.println(".data"); break;
                 case TEXT : writer.println(".text"); break;
             }
-            items.forEach(item ->
-                    item.accept(new AssemblyItemVisitor<Void>() {
-
-                        public Void visitComment(AssemblyItem.Comment comment) {
-                            writer.println("# "+comment);
-                            return null;
-                        }
-                        public Void visitLabel(AssemblyItem.Label label) {
-                            writer.println(label + ":");
-                            return null;
-                        }
-
-                        public Void visitDirective(AssemblyItem.Directive directive) {
-                            writer.println(directive);
-                            return null;
-                        }
-
-                        public Void visitInstruction(AssemblyItem.Instruction instruction) {
-                            writer.println(instruction);
-                            return null;
-                        }
-                    })
-            );
+            items.forEach(item -> writer.println(line(item)));
+        }
+
+        // an item as it is printed, on a line of its own
+        public static String line(AssemblyItem item) {
+            if (item instanceof AssemblyItem.Comment)
+                return "# " + item;
+            if (item instanceof AssemblyItem.Label)
+                return item + ":";
+            return item.toString(); // directives and instructions
         }
     }
 
@@ -150,8 +139,11 @@ public class AssemblyProgram {
     private Section currSection;
     private Section dataSection;
     public final List<Section> sections = new LinkedList<Section>();
+    // numbers the registers and labels of the program
+    public final CompilationSession session;
 
-    public AssemblyProgram() {
+    public AssemblyProgram(CompilationSession session) {
+        this.session = session;
         this.dataSection = new Section(Section.Type.DATA);
         sections.add(dataSection);
         this.currSection = dataSection;
@@ -1,5 +1,7 @@
 package gen.asm;
 
+import compiler.CompilationSession;
+
 import java.util.Objects;
 
 /**
@@ -10,11 +12,10 @@ public abstract class Register {
     abstract public boolean isVirtual();
 
     static public class Virtual extends Register {
-        private static int cnt = 0;
         private final int id;
 
-        public Virtual() {
-            this.id = cnt++;
+        public Virtual(CompilationSession session) {
+            this.id = session.nextRegisterId();
         }
 
         public String toString() {
@@ -0,0 +1,37 @@
+package lexer;
+
+import java.util.Arrays;
+
+/**
+ * Lexing error reports kept in scanning order, each tagged with the index of the token being scanned
+ * when it was reported. Used by the chunks of a ParallelTokeniser, which can only tell which of their
+ * reports are real once they have been stitched together.
+ */
+class ErrorLog {
+
+    private int size = 0;
+    private int[] tokens = new int[8];
+    private String[] messages = new String[8];
+
+    void add(int token, String message) {
+        if (size == tokens.length) {
+            tokens = Arrays.copyOf(tokens, size * 2);
+            messages = Arrays.copyOf(messages, size * 2);
+        }
+        tokens[size] = token;
+        messages[size] = message;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int token(int i) {
+        return tokens[i];
+    }
+
+    String message(int i) {
+        return messages[i];
+    }
+}
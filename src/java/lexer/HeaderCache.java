@@ -0,0 +1,152 @@
+package lexer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pre-tokenised headers keyed by the SHA-256 of their content, so that a header shared by many
+ * files is only lexed once: in memory for the lifetime of the cache, and on disk in a directory
+ * reused by later compiler runs. The disk form only holds the token arrays and the lexing error
+ * reports, the header itself is read again anyway to compute its hash.
+ *
+ * A disk entry which cannot be read (other version, truncated) is lexed again and replaced.
+ */
+public class HeaderCache {
+
+    private static final int MAGIC = 0x4d43544b; // "MCTK"
+    private static final int VERSION = 1;
+
+    private final File directory;
+    private final Map<String, Header> headers = new HashMap<>();
+
+    private static final class Header {
+        final String source;
+        final TokenBuffer tokens;
+        final String[] errors;
+
+        Header(String source, TokenBuffer tokens, String[] errors) {
+            this.source = source;
+            this.tokens = tokens;
+            this.errors = errors;
+        }
+    }
+
+    /*
+     * directory may be null to only cache in memory.
+     */
+    public HeaderCache(File directory) {
+        this.directory = directory;
+    }
+
+    /*
+     * Returns the tokens of a header, reprinting its lexing error reports on out if it had any.
+     * Every call returns a fresh buffer, they can be consumed concurrently.
+     */
+    public TokenBuffer tokens(File file, PrintStream out) throws IOException {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        String hash = hash(bytes);
+
+        Header header;
+        synchronized (headers) {
+            header = headers.get(hash);
+        }
+        if (header == null) {
+            String source = Charset.defaultCharset().decode(ByteBuffer.wrap(bytes)).toString();
+            header = load(hash, source);
+            if (header == null) {
+                header = lex(source);
+                store(hash, header);
+            }
+            synchronized (headers) {
+                headers.putIfAbsent(hash, header);
+            }
+        }
+
+        for (String error : header.errors)
+            out.println(error);
+        TokenBuffer tokens = new TokenBuffer(new Tokeniser(new Scanner(header.source)), header.tokens.size());
+        tokens.append(header.tokens, 0, header.tokens.size());
+        return tokens;
+    }
+
+    private static Header lex(String source) {
+        ErrorLog log = new ErrorLog();
+        TokenBuffer tokens = new Tokeniser(new Scanner(source), log).tokenise();
+        String[] errors = new String[log.size()];
+        for (int i = 0; i < errors.length; i++)
+            errors[i] = log.message(i);
+        return new Header(source, tokens, errors);
+    }
+
+    private File entry(String hash) {
+        return new File(directory, hash + ".tok");
+    }
+
+    private Header load(String hash, String source) {
+        if (directory == null || !entry(hash).isFile())
+            return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry(hash))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return null;
+            String[] errors = new String[in.readInt()];
+            for (int i = 0; i < errors.length; i++)
+                errors[i] = in.readUTF();
+            TokenBuffer tokens = TokenBuffer.read(new Tokeniser(new Scanner(source)), in);
+            return new Header(source, tokens, errors);
+        } catch (IOException | RuntimeException e) {
+            return null; // unreadable entry, lexed again and overwritten
+        }
+    }
+
+    // writes to a temporary file renamed into place, so that concurrent runs never see a partial entry
+    private void store(String hash, Header header) {
+        if (directory == null)
+            return;
+        File temporary = null;
+        try {
+            Files.createDirectories(directory.toPath());
+            temporary = File.createTempFile(hash, ".tmp", directory);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(header.errors.length);
+                for (String error : header.errors)
+                    out.writeUTF(error);
+                header.tokens.write(out);
+            }
+            Files.move(temporary.toPath(), entry(hash).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // the cache is only an optimisation, the header is still compiled
+            if (temporary != null)
+                temporary.delete();
+        }
+    }
+
+    private static String hash(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e); // every Java platform provides SHA-256
+        }
+    }
+}
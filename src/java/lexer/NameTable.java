@@ -0,0 +1,69 @@
+package lexer;
+
+/**
+ * Interning table for identifiers, keyed directly by a range of the scanner's buffer.
+ * Repeated names share a single String instance, and no String is allocated for a name already seen.
+ * Open addressing with linear probing, the table is grown at half load.
+ */
+public class NameTable {
+
+    private String[] names = new String[256];
+    private int[] hashes = new int[256];
+    private int size = 0;
+
+    public String intern(char[] buffer, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++)
+            hash = 31 * hash + buffer[i];
+
+        int mask = names.length - 1;
+        int slot = mix(hash) & mask;
+        while (names[slot] != null) {
+            if (hashes[slot] == hash && matches(names[slot], buffer, start, length))
+                return names[slot];
+            slot = (slot + 1) & mask;
+        }
+
+        String name = new String(buffer, start, length);
+        names[slot] = name;
+        hashes[slot] = hash;
+        if (++size * 2 > names.length)
+            grow();
+        return name;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String name, char[] buffer, int start, int length) {
+        if (name.length() != length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != buffer[start + i])
+                return false;
+        }
+        return true;
+    }
+
+    private void grow() {
+        String[] oldNames = names;
+        int[] oldHashes = hashes;
+        names = new String[oldNames.length * 2];
+        hashes = new int[oldNames.length * 2];
+        int mask = names.length - 1;
+        for (int i = 0; i < oldNames.length; i++) {
+            if (oldNames[i] == null)
+                continue;
+            int slot = mix(oldHashes[i]) & mask;
+            while (names[slot] != null)
+                slot = (slot + 1) & mask;
+            names[slot] = oldNames[i];
+            hashes[slot] = oldHashes[i];
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package lexer;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Lexes a source in chunks on a ForkJoinPool and stitches them back into a single TokenBuffer holding
+ * exactly the tokens of a sequential Tokeniser.tokenise(), with the same lexing error reports in the same order.
+ *
+ * A cheap sequential pre-scan splits the source after newlines outside comments and literals, and counts
+ * the lines before each split so that every chunk reports absolute positions. Each chunk is lexed up to the
+ * first token scanned from inside the next chunk. When the offset it stopped at is one the next chunk scanned
+ * from as well, both lex the same tokens from there on. Otherwise the split was not a token boundary after all
+ * and the chunk carries on sequentially until the two meet, so a wrong guess only costs time.
+ */
+public class ParallelTokeniser {
+
+    // below this many characters per chunk the parallelism does not pay for the stitching
+    private static final int MIN_CHUNK = 64 * 1024;
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private final Scanner scanner;
+    private final ForkJoinPool pool;
+    private final int chunkCount;
+
+    private int error = 0;
+    // where the error reports are printed
+    private PrintStream out = System.out;
+
+    public ParallelTokeniser(Scanner scanner, ForkJoinPool pool) {
+        this(scanner, pool, Math.min(pool.getParallelism() * CHUNKS_PER_THREAD, scanner.getLength() / MIN_CHUNK));
+    }
+
+    /*
+     * Splits the source in at most the given number of chunks, whatever its size.
+     */
+    public ParallelTokeniser(Scanner scanner, ForkJoinPool pool, int chunks) {
+        this.scanner = scanner;
+        this.pool = pool;
+        this.chunkCount = Math.max(1, chunks);
+    }
+
+    public void setOutput(PrintStream out) {
+        this.out = out;
+    }
+
+    public int getErrorCount() {
+        return error;
+    }
+
+    /*
+     * Scans all the tokens, up to and including EOF, into a new TokenBuffer.
+     */
+    public TokenBuffer tokenise() {
+        List<Chunk> chunks = split();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(chunks.size());
+        for (Chunk chunk : chunks)
+            tasks.add(pool.submit(chunk::lex));
+        for (ForkJoinTask<?> task : tasks)
+            task.join();
+        return stitch(chunks);
+    }
+
+    private List<Chunk> split() {
+        char[] input = scanner.getBuffer();
+        int length = scanner.getLength();
+        List<Chunk> chunks = new ArrayList<>(chunkCount);
+
+        int start = 0;
+        int startLine = 1;
+        int line = 1;
+        int next = 1;
+        long target = (long) length * next / chunkCount;
+        int i = 0;
+        while (i < length && next < chunkCount) {
+            char c = input[i++];
+            int end;
+            switch (c) {
+                case '\n':
+                    line++;
+                    if (i >= target) {
+                        chunks.add(new Chunk(start, i, startLine));
+                        start = i;
+                        startLine = line;
+                        next++;
+                        target = (long) length * next / chunkCount;
+                    }
+                    break;
+                case '\r':
+                    line++;
+                    break;
+                case '/':
+                    if (i < length && input[i] == '/') { // line comment, up to the line terminator
+                        while (i < length && input[i] != '\n' && input[i] != '\r')
+                            i++;
+                    } else if (i < length && input[i] == '*') { // block comment, up to "*" "/"
+                        end = i + 1;
+                        while (end < length && !(input[end] == '*' && end + 1 < length && input[end + 1] == '/'))
+                            end++;
+                        line += lineTerminators(input, i, end);
+                        i = Math.min(end + 2, length);
+                    }
+                    break;
+                case '"':
+                    end = i;
+                    while (end < length && input[end] != '"')
+                        end += input[end] == '\\' ? 2 : 1;
+                    end = Math.min(end, length);
+                    line += lineTerminators(input, i, end);
+                    i = Math.min(end + 1, length);
+                    break;
+                case '\'':
+                    end = Math.min(i + (i < length && input[i] == '\\' ? 3 : 2), length);
+                    line += lineTerminators(input, i, end);
+                    i = end;
+                    break;
+                default:
+                    break;
+            }
+        }
+        chunks.add(new Chunk(start, Integer.MAX_VALUE, startLine));
+        return chunks;
+    }
+
+    // the scanner counts a line for every '\n' and every '\r'
+    private static int lineTerminators(char[] input, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (input[i] == '\n' || input[i] == '\r')
+                count++;
+        }
+        return count;
+    }
+
+    private TokenBuffer stitch(List<Chunk> chunks) {
+        TokenBuffer result = new TokenBuffer(new Tokeniser(scanner), scanner.getLength() / CHARS_PER_TOKEN);
+        Chunk current = chunks.get(0);
+        int from = 0;
+        for (int k = 1; k < chunks.size() && !current.done; k++) {
+            Chunk next = chunks.get(k);
+            int at = next.indexOf(current.stop());
+            if (at < 0) {
+                current.lexUntil(next.limit, next);
+                at = next.indexOf(current.stop());
+                if (at < 0) // current went through the whole of next (or to the end of the input)
+                    continue;
+            }
+            take(result, current, from);
+            current = next;
+            from = at;
+        }
+        take(result, current, from);
+        return result;
+    }
+
+    // appends the tokens of a chunk from the given one and reports their errors
+    private void take(TokenBuffer result, Chunk chunk, int from) {
+        result.append(chunk.tokens, from, chunk.tokens.size());
+        ErrorLog errors = chunk.errors;
+        for (int i = 0; i < errors.size(); i++) {
+            if (errors.token(i) >= from) {
+                out.println(errors.message(i));
+                error++;
+            }
+        }
+    }
+
+    private final class Chunk {
+        final int start;
+        final int limit;
+        final int line;
+
+        final ErrorLog errors = new ErrorLog();
+        Tokeniser tokeniser;
+        TokenBuffer tokens;
+        // offset each token was scanned from, in increasing order
+        int[] scanStarts;
+        boolean done = false;
+
+        Chunk(int start, int limit, int line) {
+            this.start = start;
+            this.limit = limit;
+            this.line = line;
+        }
+
+        void lex() {
+            int capacity = (int) Math.min((long) limit - start, scanner.getLength() - start) / CHARS_PER_TOKEN;
+            tokeniser = new Tokeniser(new Scanner(scanner, start, line), errors);
+            tokens = new TokenBuffer(tokeniser, capacity);
+            scanStarts = new int[Math.max(16, capacity)];
+            lexUntil(limit, null);
+        }
+
+        // lexes while the next token would be scanned from before limit and from an offset other has not scanned from
+        void lexUntil(int limit, Chunk other) {
+            while (!done) {
+                int offset = tokeniser.getOffset();
+                if (offset >= limit || (other != null && other.indexOf(offset) >= 0))
+                    return;
+                int i = tokens.size();
+                if (i == scanStarts.length)
+                    scanStarts = Arrays.copyOf(scanStarts, i * 2);
+                scanStarts[i] = offset;
+                tokeniser.scanInto(tokens);
+                done = tokens.tokenClass(i) == Token.TokenClass.EOF;
+            }
+        }
+
+        // offset the next token would be scanned from
+        int stop() {
+            return tokeniser.getOffset();
+        }
+
+        // index of the token scanned from offset, or a negative value
+        int indexOf(int offset) {
+            return Arrays.binarySearch(scanStarts, 0, tokens.size(), offset);
+        }
+    }
+}
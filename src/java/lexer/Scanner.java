@@ -1,20 +1,54 @@
 package lexer;
 
 import java.io.*;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 
 /**
  * @author cdubach
+ *
+ * The whole source is memory-mapped and decoded once into a char[] which is then walked with an index.
+ * peekChar()/nextChar() return the EOF sentinel at the end of the input instead of throwing.
  */
 public class Scanner {
 
-    private BufferedReader input;
-    private int peeked = -1;
+    public static final int EOF = -1;
+
+    private final char[] input;
+    private final int length;
+    private int pos = 0;
 
     private int line = 1;
     private int column = 0;
 
     public Scanner(File source) throws FileNotFoundException {
-        input = new BufferedReader(new FileReader(source));
+        try (FileInputStream in = new FileInputStream(source); FileChannel channel = in.getChannel()) {
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            CharBuffer chars = Charset.defaultCharset().decode(bytes);
+            this.input = chars.array();
+            this.length = chars.limit();
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Scanner(String source) {
+        this.input = source.toCharArray();
+        this.length = input.length;
+    }
+
+    /*
+     * A scanner over the same input, starting at the beginning of a line.
+     */
+    Scanner(Scanner source, int offset, int line) {
+        this.input = source.input;
+        this.length = source.length;
+        this.pos = offset;
+        this.line = line;
     }
 
 
@@ -26,43 +60,125 @@ public class Scanner {
         return line;
     }
 
-    public char peek() throws IOException {
-        if (peeked != -1)
-            return (char)peeked;
-
-        int r = input.read();
-        if (r == -1)
-            throw new EOFException();
-
-        peeked = r;
-        return (char) r;
+    /*
+     * Returns the next character without consuming it, or EOF.
+     */
+    public int peekChar() {
+        return pos < length ? input[pos] : EOF;
     }
 
+    /*
+     * Consumes the next character and returns it, or EOF.
+     */
+    public int nextChar() {
+        if (pos >= length)
+            return EOF;
 
-    public char next() throws IOException {
-        char r;
-        if (peeked != -1) {
-            r = (char) peeked;
-            peeked = -1;
-        } else {
-            int i = input.read();
-            if (i == -1)
-                throw new EOFException();
-            r = (char) i;
-        }
+        char r = input[pos++];
+        advance(r);
+        return r;
+    }
 
+    private void advance(char r) {
         if (r == '\n' || r == '\r') {
             line++;
-            column =0;
+            column = 0;
         } else {
             column++;
         }
-        return r;
+    }
+
+    /*
+     * Skips a run of white spaces directly on the buffer.
+     */
+    public void skipWhitespace() {
+        while (pos < length && Character.isWhitespace(input[pos]))
+            advance(input[pos++]);
+    }
+
+    /*
+     * Skips the rest of a single line comment, the leading "//" must have been consumed.
+     * The terminating '\n' is consumed as well, a lone '\r' is left in the input.
+     */
+    public void skipLineComment() {
+        while (pos < length && input[pos] != '\n' && input[pos] != '\r')
+            advance(input[pos++]);
+        if (pos < length && input[pos] == '\n')
+            advance(input[pos++]);
+    }
+
+    /*
+     * Skips the rest of a multiple line comment up to and including the closing "*" "/",
+     * the leading "/" "*" must have been consumed. Stops at the end of the input if the comment is not closed.
+     */
+    public void skipBlockComment() {
+        while (pos < length) {
+            char r = input[pos++];
+            advance(r);
+            if (r == '*' && pos < length && input[pos] == '/') {
+                advance(input[pos++]);
+                return;
+            }
+        }
+    }
+
+    /*
+     * Skips the remaining characters of an identifier (letters, digits and '_').
+     * None of them is a line terminator, so only the column moves.
+     */
+    public void skipIdentifierChars() {
+        int start = pos;
+        while (pos < length && (Character.isLetterOrDigit(input[pos]) || input[pos] == '_'))
+            pos++;
+        column += pos - start;
+    }
+
+    /*
+     * Skips the remaining digits of an integer literal.
+     */
+    public void skipDigits() {
+        int start = pos;
+        while (pos < length && Character.isDigit(input[pos]))
+            pos++;
+        column += pos - start;
+    }
+
+    /*
+     * Offset of the next character in the buffer.
+     */
+    public int getOffset() {
+        return pos;
+    }
+
+    char[] getBuffer() {
+        return input;
+    }
+
+    /*
+     * Number of characters of the input, the buffer may be longer.
+     */
+    int getLength() {
+        return length;
+    }
+
+    public char peek() throws IOException {
+        int r = peekChar();
+        if (r == EOF)
+            throw new EOFException();
+        return (char) r;
+    }
+
+
+    public char next() throws IOException {
+        int r = nextChar();
+        if (r == EOF)
+            throw new EOFException();
+        return (char) r;
     }
 
 
     public void close() throws IOException {
-        input.close();
+        // nothing to release, the input has been fully read in the constructor
     }
 
 
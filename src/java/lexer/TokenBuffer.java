@@ -0,0 +1,353 @@
+package lexer;
+
+import lexer.Token.TokenClass;
+import util.Position;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A compact token stream stored as parallel primitive arrays (struct-of-arrays):
+ * token class ordinal, start/end offsets into the source, line and column.
+ * Token objects are only materialised on demand (diagnostics, -lexer output).
+ *
+ * The buffer is filled from its Tokeniser on demand, so a parser can start consuming it by index
+ * before the whole input has been lexed. Looking past the EOF token returns the EOF token again.
+ *
+ * A buffer created with window(tokeniser, capacity) is a fixed size ring instead: token i lives in slot
+ * i & (capacity - 1) and only the last capacity tokens lexed can be read, so a streaming parser
+ * gets O(1) indexed lookahead in constant memory.
+ *
+ * A buffer created with pipelined(tokeniser) is filled by a TokenPipeline running the tokeniser on its own thread.
+ */
+public class TokenBuffer {
+
+    private static final TokenClass[] CLASSES = TokenClass.values();
+    private static final int MIN_CAPACITY = 1024;
+    // rough number of source characters per token, used to presize the arrays
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private final Tokeniser tokeniser;
+    // slot mask of a ring buffer, -1 (every index is its own slot) for a buffer retaining all the tokens
+    private final int mask;
+    // when set, tokens come in batches from the lexer thread of the pipeline instead of being scanned here
+    private TokenPipeline pipeline;
+    private boolean complete = false;
+    private int size = 0;
+
+    private byte[] classes;
+    private int[] starts;
+    private int[] ends;
+    private int[] lines;
+    private int[] columns;
+
+    // decoded values of char and string literals, keyed by token index (appended in increasing order)
+    private int literalCount = 0;
+    private int[] literalTokens = new int[16];
+    private String[] literalValues = new String[16];
+    // decoded literals of a ring buffer, indexed by slot
+    private String[] literalSlots;
+
+    public TokenBuffer(Tokeniser tokeniser) {
+        this(tokeniser, -1, Math.max(MIN_CAPACITY, tokeniser.getSourceLength() / CHARS_PER_TOKEN));
+    }
+
+    TokenBuffer(Tokeniser tokeniser, int capacity) {
+        this(tokeniser, -1, Math.max(16, capacity));
+    }
+
+    private TokenBuffer(Tokeniser tokeniser, int mask, int capacity) {
+        this.tokeniser = tokeniser;
+        this.mask = mask;
+        classes = new byte[capacity];
+        starts = new int[capacity];
+        ends = new int[capacity];
+        lines = new int[capacity];
+        columns = new int[capacity];
+    }
+
+    /*
+     * Creates a ring buffer keeping only the last capacity tokens, rounded up to a power of two.
+     */
+    public static TokenBuffer window(Tokeniser tokeniser, int capacity) {
+        int slots = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        TokenBuffer tokens = new TokenBuffer(tokeniser, slots - 1, slots);
+        tokens.literalSlots = new String[slots];
+        return tokens;
+    }
+
+    /*
+     * Creates a buffer filled by the tokeniser running on a separate thread.
+     */
+    public static TokenBuffer pipelined(Tokeniser tokeniser) {
+        TokenBuffer tokens = new TokenBuffer(tokeniser);
+        tokens.pipeline = new TokenPipeline(tokeniser);
+        tokens.pipeline.start();
+        return tokens;
+    }
+
+    /*
+     * Stops the lexer thread of a pipelined buffer, the tokens it has not handed over yet cannot be read
+     * afterwards. Does nothing for the other buffers.
+     */
+    public void close() {
+        if (pipeline != null)
+            pipeline.close();
+    }
+
+    private boolean isWindow() {
+        return mask != -1;
+    }
+
+    void add(TokenClass tokenClass, int start, int end, int line, int column, String literal) {
+        if (isWindow()) {
+            int slot = size & mask;
+            classes[slot] = (byte) tokenClass.ordinal();
+            starts[slot] = start;
+            ends[slot] = end;
+            lines[slot] = line;
+            columns[slot] = column;
+            literalSlots[slot] = literal;
+            size++;
+            complete = tokenClass == TokenClass.EOF;
+            return;
+        }
+
+        if (size == classes.length) {
+            int capacity = size * 2;
+            classes = Arrays.copyOf(classes, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            columns = Arrays.copyOf(columns, capacity);
+        }
+        classes[size] = (byte) tokenClass.ordinal();
+        starts[size] = start;
+        ends[size] = end;
+        lines[size] = line;
+        columns[size] = column;
+
+        if (literal != null) {
+            if (literalCount == literalTokens.length) {
+                literalTokens = Arrays.copyOf(literalTokens, literalCount * 2);
+                literalValues = Arrays.copyOf(literalValues, literalCount * 2);
+            }
+            literalTokens[literalCount] = size;
+            literalValues[literalCount] = literal;
+            literalCount++;
+        }
+
+        size++;
+        if (tokenClass == TokenClass.EOF) {
+            complete = true;
+            trim();
+        }
+    }
+
+    /*
+     * Appends the tokens [from, to) of another buffer over the same source.
+     */
+    void append(TokenBuffer other, int from, int to) {
+        int count = to - from;
+        if (count <= 0)
+            return;
+        if (size + count > classes.length) {
+            int capacity = Math.max(size + count, classes.length * 2);
+            classes = Arrays.copyOf(classes, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            columns = Arrays.copyOf(columns, capacity);
+        }
+        System.arraycopy(other.classes, from, classes, size, count);
+        System.arraycopy(other.starts, from, starts, size, count);
+        System.arraycopy(other.ends, from, ends, size, count);
+        System.arraycopy(other.lines, from, lines, size, count);
+        System.arraycopy(other.columns, from, columns, size, count);
+
+        int first = other.literalIndex(from);
+        for (int l = first; l < other.literalCount && other.literalTokens[l] < to; l++) {
+            if (literalCount == literalTokens.length) {
+                literalTokens = Arrays.copyOf(literalTokens, literalCount * 2);
+                literalValues = Arrays.copyOf(literalValues, literalCount * 2);
+            }
+            literalTokens[literalCount] = other.literalTokens[l] - from + size;
+            literalValues[literalCount] = other.literalValues[l];
+            literalCount++;
+        }
+
+        size += count;
+        if (CLASSES[classes[size - 1]] == TokenClass.EOF) {
+            complete = true;
+            trim();
+        }
+    }
+
+    // index in the literal table of the first literal at or after token i
+    private int literalIndex(int i) {
+        int found = Arrays.binarySearch(literalTokens, 0, literalCount, i);
+        return found >= 0 ? found : -found - 1;
+    }
+
+    /*
+     * Writes the whole token stream in binary form, see read().
+     * Only the source ranges are written, the source itself is needed again to read them back.
+     */
+    void write(DataOutput out) throws IOException {
+        fill();
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeByte(classes[i]);
+            out.writeInt(starts[i]);
+            out.writeInt(ends[i]);
+            out.writeInt(lines[i]);
+            out.writeInt(columns[i]);
+        }
+        out.writeInt(literalCount);
+        for (int l = 0; l < literalCount; l++) {
+            out.writeInt(literalTokens[l]);
+            out.writeUTF(literalValues[l]);
+        }
+    }
+
+    /*
+     * Reads a token stream written by write() for the source of the given tokeniser.
+     */
+    static TokenBuffer read(Tokeniser tokeniser, DataInput in) throws IOException {
+        int count = in.readInt();
+        TokenBuffer tokens = new TokenBuffer(tokeniser, count);
+        for (int i = 0; i < count; i++) {
+            tokens.classes[i] = in.readByte();
+            if (tokens.classes[i] < 0 || tokens.classes[i] >= CLASSES.length)
+                throw new IOException("bad token class " + tokens.classes[i]);
+            tokens.starts[i] = in.readInt();
+            tokens.ends[i] = in.readInt();
+            tokens.lines[i] = in.readInt();
+            tokens.columns[i] = in.readInt();
+        }
+        int literals = in.readInt();
+        tokens.literalTokens = new int[Math.max(1, literals)];
+        tokens.literalValues = new String[Math.max(1, literals)];
+        for (int l = 0; l < literals; l++) {
+            tokens.literalTokens[l] = in.readInt();
+            tokens.literalValues[l] = in.readUTF();
+        }
+        tokens.literalCount = literals;
+        tokens.size = count;
+        if (count == 0 || CLASSES[tokens.classes[count - 1]] != TokenClass.EOF)
+            throw new IOException("truncated token stream");
+        tokens.complete = true;
+        tokens.trim();
+        return tokens;
+    }
+
+    // releases the growth slack once the whole input has been lexed
+    private void trim() {
+        classes = Arrays.copyOf(classes, size);
+        starts = Arrays.copyOf(starts, size);
+        ends = Arrays.copyOf(ends, size);
+        lines = Arrays.copyOf(lines, size);
+        columns = Arrays.copyOf(columns, size);
+    }
+
+    /*
+     * Lexes the rest of the input into the buffer.
+     */
+    public void fill() {
+        while (!complete)
+            more();
+        if (pipeline != null)
+            pipeline.report(size - 1);
+    }
+
+    private void more() {
+        if (pipeline != null) {
+            TokenBuffer batch = pipeline.take();
+            append(batch, 0, batch.size());
+        } else {
+            tokeniser.scanInto(this);
+        }
+    }
+
+    /*
+     * Number of tokens lexed so far, the EOF token included once the input has been fully lexed.
+     */
+    public int size() {
+        return size;
+    }
+
+    public Tokeniser getTokeniser() {
+        return tokeniser;
+    }
+
+    // ensures the i^th token has been lexed, returns the slot to read (the EOF token for any i past it)
+    private int index(int i) {
+        while (!complete && size <= i)
+            more();
+        if (i >= size)
+            i = size - 1;
+        if (pipeline != null && i >= pipeline.nextError)
+            pipeline.report(i);
+        if (isWindow() && i < size - classes.length)
+            throw new IllegalStateException("token " + i + " has left the lookahead window");
+        return i & mask;
+    }
+
+    // index(i) may grow the arrays, so it must be evaluated before they are read
+
+    public TokenClass tokenClass(int i) {
+        i = index(i);
+        return CLASSES[classes[i]];
+    }
+
+    public int start(int i) {
+        i = index(i);
+        return starts[i];
+    }
+
+    public int end(int i) {
+        i = index(i);
+        return ends[i];
+    }
+
+    public int line(int i) {
+        i = index(i);
+        return lines[i];
+    }
+
+    public int column(int i) {
+        i = index(i);
+        return columns[i];
+    }
+
+    public Position position(int i) {
+        i = index(i);
+        return new Position(lines[i], columns[i]);
+    }
+
+    public String data(int i) {
+        return dataAt(index(i));
+    }
+
+    private String dataAt(int i) {
+        TokenClass tokenClass = CLASSES[classes[i]];
+        String literal = null;
+        if (isWindow()) {
+            literal = literalSlots[i];
+        } else if (tokenClass == TokenClass.CHAR_LITERAL || tokenClass == TokenClass.STRING_LITERAL) {
+            int found = Arrays.binarySearch(literalTokens, 0, literalCount, i);
+            literal = literalValues[found];
+        }
+        return tokeniser.data(tokenClass, starts[i], ends[i], literal);
+    }
+
+    /*
+     * Materialises the i^th token.
+     */
+    public Token get(int i) {
+        i = index(i);
+        return new Token(CLASSES[classes[i]], dataAt(i), lines[i], columns[i]);
+    }
+}
@@ -0,0 +1,101 @@
+package lexer;
+
+import util.SpscQueue;
+
+/**
+ * Runs a Tokeniser on its own thread, ahead of the parser. Tokens are handed over in batches of
+ * BATCH_SIZE through a bounded SpscQueue, so the two threads only synchronise once per batch.
+ *
+ * The lexing errors of a batch travel with it and are printed by the consumer once it reads the
+ * token they were reported for, in the same order relative to the parser's own output as when the
+ * parser scans the tokens itself.
+ *
+ * The lexer thread stops once the queue is closed, the parser closes it when it is done, having read
+ * the EOF token or not.
+ */
+class TokenPipeline {
+
+    static final int BATCH_SIZE = 1024;
+    private static final int QUEUE_BATCHES = 64;
+
+    static final class Batch {
+        final TokenBuffer tokens;
+        final ErrorLog errors;
+        final RuntimeException failure;
+
+        Batch(TokenBuffer tokens, ErrorLog errors, RuntimeException failure) {
+            this.tokens = tokens;
+            this.errors = errors;
+            this.failure = failure;
+        }
+    }
+
+    private final Tokeniser tokeniser;
+    private final SpscQueue<Batch> queue = new SpscQueue<>(QUEUE_BATCHES);
+
+    // error reports received but not printed yet, in order
+    private final ErrorLog pending = new ErrorLog();
+    private int printed = 0;
+    // token of the next error report to print, MAX_VALUE if there is none
+    int nextError = Integer.MAX_VALUE;
+
+    TokenPipeline(Tokeniser tokeniser) {
+        this.tokeniser = tokeniser;
+    }
+
+    void start() {
+        Thread thread = new Thread(this::produce, "lexer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void produce() {
+        try {
+            boolean done = false;
+            while (!done) {
+                ErrorLog errors = new ErrorLog();
+                tokeniser.setErrorLog(errors);
+                TokenBuffer batch = new TokenBuffer(tokeniser, BATCH_SIZE);
+                for (int i = 0; i < BATCH_SIZE && !done; i++) {
+                    tokeniser.scanInto(batch);
+                    done = batch.tokenClass(i) == Token.TokenClass.EOF;
+                }
+                if (!queue.put(new Batch(batch, errors, null)))
+                    return;
+            }
+        } catch (RuntimeException e) {
+            queue.put(new Batch(null, null, e));
+        }
+    }
+
+    /*
+     * Waits for the next batch, its error reports are kept until report() reaches them.
+     */
+    TokenBuffer take() {
+        Batch batch = queue.take();
+        if (batch.failure != null)
+            throw batch.failure;
+        for (int i = 0; i < batch.errors.size(); i++)
+            pending.add(batch.errors.token(i), batch.errors.message(i));
+        updateNextError();
+        return batch.tokens;
+    }
+
+    // stops the lexer thread, the batches it has not handed over are dropped
+    void close() {
+        queue.close();
+    }
+
+    /*
+     * Prints the error reports of the tokens up to token i.
+     */
+    void report(int i) {
+        while (printed < pending.size() && pending.token(printed) <= i)
+            tokeniser.getOutput().println(pending.message(printed++));
+        updateNextError();
+    }
+
+    private void updateNextError() {
+        nextError = printed < pending.size() ? pending.token(printed) : Integer.MAX_VALUE;
+    }
+}
@@ -4,19 +4,53 @@ import lexer.Token.TokenClass;
 
 import java.io.EOFException;
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.io.PrintStream;
 
 /**
  * @author cdubach
  */
 public class Tokeniser {
 
+    private static final String[] KEYWORDS = {
+            "if", "int", "void", "char", "else", "while", "return", "struct", "sizeof"
+    };
+    private static final TokenClass[] KEYWORD_CLASSES = {
+            TokenClass.IF, TokenClass.INT, TokenClass.VOID, TokenClass.CHAR, TokenClass.ELSE,
+            TokenClass.WHILE, TokenClass.RETURN, TokenClass.STRUCT, TokenClass.SIZEOF
+    };
+
+    // keyword text indexed by token class ordinal, null for the other classes
+    private static final String[] KEYWORD_TEXT = new String[TokenClass.values().length];
+
+    static {
+        for (int i = 0; i < KEYWORDS.length; i++)
+            KEYWORD_TEXT[KEYWORD_CLASSES[i].ordinal()] = KEYWORDS[i];
+    }
+
     private Scanner scanner;
 
+    private final NameTable names = new NameTable();
+
+    // the token being scanned: source range, position and decoded value for char and string literals
+    private int tokenStart;
+    private int tokenEnd;
+    private int tokenLine;
+    private int tokenColumn;
+    private String tokenLiteral;
+
     private int error = 0;
 
+    // number of tokens scanned so far, the one being scanned included
+    private int scanned = 0;
+    // when set, the error reports are kept there instead of being printed
+    private ErrorLog errorLog;
+    // where the error reports are printed otherwise
+    private PrintStream out = System.out;
+
+    // when set, the time spent scanning is added up in nanos
+    private boolean timed = false;
+    private long nanos = 0;
+
     public int getErrorCount() {
         return this.error;
     }
@@ -25,131 +59,224 @@ public class Tokeniser {
         this.scanner = scanner;
     }
 
+    Tokeniser(Scanner scanner, ErrorLog errorLog) {
+        this.scanner = scanner;
+        this.errorLog = errorLog;
+    }
+
+    void setErrorLog(ErrorLog errorLog) {
+        this.errorLog = errorLog;
+    }
+
+    public void setOutput(PrintStream out) {
+        this.out = out;
+    }
+
+    PrintStream getOutput() {
+        return out;
+    }
+
+    /*
+     * Times the scanning of each token from now on, for a parser which pulls the tokens as it goes and
+     * wants the lexing time apart from its own. Reading the clock twice per token is not free.
+     */
+    public void setTimed(boolean timed) {
+        this.timed = timed;
+    }
+
+    // the time spent scanning while timed, in nanoseconds
+    public long getNanos() {
+        return nanos;
+    }
+
+    int getSourceLength() {
+        return scanner.getLength();
+    }
+
+    /*
+     * Offset in the source where the next token will be scanned from, before white spaces and comments.
+     */
+    int getOffset() {
+        return scanner.getOffset();
+    }
+
     private void error(char c, int line, int col) {
-        System.out.println("Lexing error: unrecognised character (" + c + ") at " + line + ":" + col);
+        String message = "Lexing error: unrecognised character (" + c + ") at " + line + ":" + col;
+        if (errorLog != null)
+            errorLog.add(scanned - 1, message);
+        else
+            out.println(message);
         error++;
     }
 
 
     public Token nextToken() {
-        Token result;
+        TokenClass tokenClass = scan();
+        return new Token(tokenClass, data(tokenClass, tokenStart, tokenEnd, tokenLiteral), tokenLine, tokenColumn);
+    }
+
+    /*
+     * Scans the next token and appends it to the buffer without creating a Token object.
+     */
+    void scanInto(TokenBuffer tokens) {
+        TokenClass tokenClass = scan();
+        tokens.add(tokenClass, tokenStart, tokenEnd, tokenLine, tokenColumn, tokenLiteral);
+    }
+
+    /*
+     * Scans all the remaining tokens, up to and including EOF, into a new TokenBuffer.
+     */
+    public TokenBuffer tokenise() {
+        TokenBuffer tokens = new TokenBuffer(this);
+        tokens.fill();
+        return tokens;
+    }
+
+    private TokenClass scan() {
+        if (!timed)
+            return scanToken();
+        long start = System.nanoTime();
+        TokenClass tokenClass = scanToken();
+        nanos += System.nanoTime() - start;
+        return tokenClass;
+    }
+
+    private TokenClass scanToken() {
+        tokenLiteral = null;
+        scanned++;
+        TokenClass result;
         try {
             result = next();
         } catch (EOFException eof) {
             // end of file, nothing to worry about, just return EOF token
-            return new Token(TokenClass.EOF, scanner.getLine(), scanner.getColumn());
+            tokenLine = scanner.getLine();
+            tokenColumn = scanner.getColumn();
+            return TokenClass.EOF;
         } catch (IOException ioe) {
             ioe.printStackTrace();
             // something went horribly wrong, abort
             System.exit(-1);
             return null;
         }
+        tokenEnd = scanner.getOffset();
         return result;
     }
 
     /*
-     * To be completed
+     * Recovers the data of a token from its source range (identifiers, integer literals),
+     * its class (keywords) or its decoded value (char and string literals).
      */
-    private Token next() throws IOException {
-
-        int line = scanner.getLine();
-        int column = scanner.getColumn();
-
-        // get the next character
-        char c = scanner.next();
-
-        // skip white spaces
-        if (Character.isWhitespace(c))
-            return next();
-
-        // COMMENTS (need to be put in front of DIV and ASTERIX 
-        // single line comment
-        if (c == '/' && scanner.peek() == '/') {
-            scanner.next(); // consume '/'
-            while(scanner.peek() != '\n' &&
-                  scanner.peek() != '\r') {
-                scanner.next(); // consume '\n'|'\r'
-            }   
-            // handle newline as "\r\n"
-            if (scanner.peek() == '\n') scanner.next();
-            return next();
+    String data(TokenClass tokenClass, int start, int end, String literal) {
+        switch (tokenClass) {
+            case IDENTIFIER:
+                return names.intern(scanner.getBuffer(), start, end - start);
+            case INT_LITERAL:
+                return new String(scanner.getBuffer(), start, end - start);
+            case CHAR_LITERAL:
+            case STRING_LITERAL:
+                return literal;
+            default:
+                String keyword = KEYWORD_TEXT[tokenClass.ordinal()];
+                return keyword != null ? keyword : "";
         }
-        // multiple line comment
-        if (c == '/' && scanner.peek() == '*') {
-            scanner.next(); // consume '*'
-            while(true) {
-                c = scanner.next();
-                if(c == '*' && scanner.peek() == '/') {
-                    scanner.next(); // consume '/'
-                    break;
-                }
+    }
+
+    private TokenClass next() throws IOException {
+
+        int line;
+        int column;
+        char c;
+
+        // skip white spaces and comments in a loop, directly on the scanner's buffer
+        while (true) {
+            scanner.skipWhitespace();
+
+            line = tokenLine = scanner.getLine();
+            column = tokenColumn = scanner.getColumn();
+            tokenStart = scanner.getOffset();
+
+            // get the next character, the end of the input is signalled by the sentinel rather than by an exception
+            int r = scanner.nextChar();
+            if (r == Scanner.EOF)
+                return TokenClass.EOF;
+            c = (char) r;
+
+            // COMMENTS (need to be put in front of DIV and ASTERIX
+            // single line comment
+            if (c == '/' && scanner.peekChar() == '/') {
+                scanner.nextChar(); // consume '/'
+                scanner.skipLineComment();
+                continue;
             }
-            return next();
+            // multiple line comment
+            if (c == '/' && scanner.peekChar() == '*') {
+                scanner.nextChar(); // consume '*'
+                scanner.skipBlockComment();
+                continue;
+            }
+            break;
         }
 
         // delimiters
-        if (c == '{') return new Token(TokenClass.LBRA, line, column);
-        else if (c == '}') return new Token(TokenClass.RBRA, line, column);
-        else if (c == '(') return new Token(TokenClass.LPAR, line, column);
-        else if (c == ')') return new Token(TokenClass.RPAR, line, column);
-        else if (c == '[') return new Token(TokenClass.LSBR, line, column);
-        else if (c == ']') return new Token(TokenClass.RSBR, line, column);
-        else if (c == ';') return new Token(TokenClass.SC, line, column);
-        else if (c == ',') return new Token(TokenClass.COMMA, line, column);
+        if (c == '{') return TokenClass.LBRA;
+        else if (c == '}') return TokenClass.RBRA;
+        else if (c == '(') return TokenClass.LPAR;
+        else if (c == ')') return TokenClass.RPAR;
+        else if (c == '[') return TokenClass.LSBR;
+        else if (c == ']') return TokenClass.RSBR;
+        else if (c == ';') return TokenClass.SC;
+        else if (c == ',') return TokenClass.COMMA;
 
         // logical operators
-        if (c == '&' && scanner.peek() == '&') {
+        if (c == '&' && scanner.peekChar() == '&') {
             scanner.next();
-            return new Token(TokenClass.LOGAND, line, column);
-        } else if (c == '|' && scanner.peek() == '|') {
+            return TokenClass.LOGAND;
+        } else if (c == '|' && scanner.peekChar() == '|') {
             scanner.next();
-            return new Token(TokenClass.LOGOR, line, column);
+            return TokenClass.LOGOR;
         }
 
         // comparisons
-        if (c == '=' && scanner.peek() == '=') {
+        if (c == '=' && scanner.peekChar() == '=') {
             scanner.next();
-            return new Token(TokenClass.EQ, line, column);
-        } else if (c == '!' && scanner.peek() == '=') {
+            return TokenClass.EQ;
+        } else if (c == '!' && scanner.peekChar() == '=') {
             scanner.next();
-            return new Token(TokenClass.NE, line, column);
-        } else if (c == '<' && scanner.peek() == '=') {
+            return TokenClass.NE;
+        } else if (c == '<' && scanner.peekChar() == '=') {
             scanner.next();
-            return new Token(TokenClass.LE, line, column);
-        } else if (c == '>' && scanner.peek() == '=') {
+            return TokenClass.LE;
+        } else if (c == '>' && scanner.peekChar() == '=') {
             scanner.next();
-            return new Token(TokenClass.GE, line, column);
+            return TokenClass.GE;
         } else if (c == '>') {
-            return new Token(TokenClass.GT, line, column);
+            return TokenClass.GT;
         } else if (c == '<') {
-            return new Token(TokenClass.LT, line, column);
+            return TokenClass.LT;
         }
 
         // assign
         if (c == '=') {
-            return new Token(TokenClass.ASSIGN, line, column);
+            return TokenClass.ASSIGN;
         }
 
 
         // operators
-        if (c == '+') return new Token(TokenClass.PLUS, line, column);
-        else if (c == '-') return new Token(TokenClass.MINUS, line, column);
-        else if (c == '*') return new Token(TokenClass.ASTERIX, line, column);
-        else if (c == '/') return new Token(TokenClass.DIV, line, column);
-        else if (c == '%') return new Token(TokenClass.REM, line, column);
-        else if (c == '&') return new Token(TokenClass.AND, line, column); // need to placed behind the LOGAND
+        if (c == '+') return TokenClass.PLUS;
+        else if (c == '-') return TokenClass.MINUS;
+        else if (c == '*') return TokenClass.ASTERIX;
+        else if (c == '/') return TokenClass.DIV;
+        else if (c == '%') return TokenClass.REM;
+        else if (c == '&') return TokenClass.AND; // need to placed behind the LOGAND
 
         // struct member access
         if (c == '.')
-            return new Token(TokenClass.DOT, line, column);
+            return TokenClass.DOT;
 
         // literals
         if (Character.isDigit(c)) { // INT_LITERAL
-            StringBuilder sb = new StringBuilder().append(c);
-            while (Character.isDigit(scanner.peek())) {
-                sb.append(scanner.next());
-            }
-            return new Token(TokenClass.INT_LITERAL, sb.toString(), line, column);
+            scanner.skipDigits();
+            return TokenClass.INT_LITERAL;
         } else if (c == '\'') { // CHAR
             StringBuilder sb = new StringBuilder();
             if (scanner.peek() == '\\') { // check escape
@@ -169,7 +296,8 @@ public class Tokeniser {
 //                throw new AssertionError("a char should be enclose by two '");
                 error(c, line, column);
             }
-            return new Token(TokenClass.CHAR_LITERAL, sb.toString(), line, column);
+            tokenLiteral = sb.toString();
+            return TokenClass.CHAR_LITERAL;
         } else if (c == '\"') { // STRING
             c = scanner.next(); // consume '\"'
             StringBuilder sb = new StringBuilder();
@@ -188,38 +316,23 @@ public class Tokeniser {
                 }
                 c = scanner.next();
             }
-            return new Token(TokenClass.STRING_LITERAL, sb.toString(), line, column);
+            tokenLiteral = sb.toString();
+            return TokenClass.STRING_LITERAL;
         }
 
         // IDENTIFIER & TYPES $ KEYWORDS
         if (Character.isLetter(c) || c == '_') {
-            StringBuilder sb = new StringBuilder().append(c);
-            while (Character.isLetterOrDigit(scanner.peek()) || scanner.peek() == '_') {
-                sb.append(scanner.next());
-            }
-            // TYPES
-            if (sb.toString().equals("int"))
-                return new Token(TokenClass.INT, sb.toString(), line, column);
-            else if (sb.toString().equals("void"))
-                return new Token(TokenClass.VOID, sb.toString(), line, column);
-            else if (sb.toString().equals("char"))
-                return new Token(TokenClass.CHAR, sb.toString(), line, column);
-            //KEYWORDS
-            if (sb.toString().equals("if"))
-                return new Token(TokenClass.IF, sb.toString(), line, column);
-            else if (sb.toString().equals("else"))
-                return new Token(TokenClass.ELSE, sb.toString(), line, column);
-            else if (sb.toString().equals("while"))
-                return new Token(TokenClass.WHILE, sb.toString(), line, column);
-            else if (sb.toString().equals("return"))
-                return new Token(TokenClass.RETURN, sb.toString(), line, column);
-            else if (sb.toString().equals("struct"))
-                return new Token(TokenClass.STRUCT, sb.toString(), line, column);
-            else if (sb.toString().equals("sizeof"))
-                return new Token(TokenClass.SIZEOF, sb.toString(), line, column);
+            scanner.skipIdentifierChars();
+            int length = scanner.getOffset() - tokenStart;
+            char[] buffer = scanner.getBuffer();
+
+            // TYPES & KEYWORDS are recognised directly on the buffer
+            int slot = keywordSlot(buffer, tokenStart, length);
+            if (slot != -1 && matches(KEYWORDS[slot], buffer, tokenStart, length))
+                return KEYWORD_CLASSES[slot];
 
             // if this is neither a type nor keyword, it is an identifier
-            return new Token(TokenClass.IDENTIFIER, sb.toString(), line, column);
+            return TokenClass.IDENTIFIER;
         }
 
         // #INCLUDE
@@ -228,12 +341,48 @@ public class Tokeniser {
             for (int i = 0; i < s.length(); i++) {
                 if (scanner.next() != s.charAt(i)) error(c, line, column);
             }
-            return new Token(TokenClass.INCLUDE, line, column);
+            return TokenClass.INCLUDE;
         }
 
         // if we reach this point, it means we did not recognise a valid token
         error(c, line, column);
-        return new Token(TokenClass.INVALID, line, column);
+        return TokenClass.INVALID;
+    }
+
+    /*
+     * Perfect hash of the keywords on (length, first character, second character).
+     * Returns the only KEYWORDS slot the word can match, or -1. The caller still has to compare the characters.
+     */
+    private static int keywordSlot(char[] buffer, int start, int length) {
+        switch (length) {
+            case 2: return buffer[start] == 'i' ? 0 : -1;
+            case 3: return buffer[start] == 'i' ? 1 : -1;
+            case 4:
+                switch (buffer[start]) {
+                    case 'v': return 2;
+                    case 'c': return 3;
+                    case 'e': return 4;
+                    default: return -1;
+                }
+            case 5: return buffer[start] == 'w' ? 5 : -1;
+            case 6:
+                switch (buffer[start]) {
+                    case 'r': return 6;
+                    case 's': return buffer[start + 1] == 't' ? 7 : 8;
+                    default: return -1;
+                }
+            default: return -1;
+        }
+    }
+
+    private static boolean matches(String keyword, char[] buffer, int start, int length) {
+        if (keyword.length() != length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (keyword.charAt(i) != buffer[start + i])
+                return false;
+        }
+        return true;
     }
 
 //    private Token tokeniseStringLiteral(char c) {
@@ -0,0 +1,76 @@
+package parser;
+
+import lexer.HeaderCache;
+import lexer.TokenBuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * State of the #include expansion of one translation unit: the headers being expanded (to detect cycles)
+ * and the headers already expanded. MiniC has no conditional compilation for include guards, so a header
+ * is expanded at most once per translation unit, later includes of it are ignored.
+ */
+public class Includes {
+
+    private final HeaderCache cache;
+    // canonical paths of the headers being expanded, innermost first
+    private final Deque<String> open = new ArrayDeque<>();
+    private final Set<String> expanded = new HashSet<>();
+
+    public Includes(HeaderCache cache) {
+        this.cache = cache;
+    }
+
+    /*
+     * Resolves an include relative to the directory of the file including it.
+     */
+    File resolve(File includer, String name) {
+        return new File(includer == null ? null : includer.getParentFile(), name);
+    }
+
+    /*
+     * Marks the header as being expanded. Returns false if it has already been expanded or is being expanded.
+     */
+    boolean enter(String path) {
+        if (open.contains(path) || expanded.contains(path))
+            return false;
+        open.push(path);
+        expanded.add(path);
+        return true;
+    }
+
+    void exit() {
+        open.pop();
+    }
+
+    boolean isOpen(String path) {
+        return open.contains(path);
+    }
+
+    /*
+     * The chain of includes leading back to path, outermost first.
+     */
+    String cycle(String path) {
+        StringBuilder sb = new StringBuilder();
+        Iterator<String> outermostFirst = open.descendingIterator();
+        boolean inCycle = false;
+        while (outermostFirst.hasNext()) {
+            String header = outermostFirst.next();
+            inCycle |= header.equals(path);
+            if (inCycle)
+                sb.append(header).append(" -> ");
+        }
+        return sb.append(path).toString();
+    }
+
+    TokenBuffer tokens(File header, PrintStream out) throws IOException {
+        return cache.tokens(header, out);
+    }
+}
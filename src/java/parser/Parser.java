@@ -1,13 +1,17 @@
 package parser;
 
 import ast.*;
-import lexer.Token;
 import lexer.Token.TokenClass;
+import lexer.TokenBuffer;
 import lexer.Tokeniser;
+import util.Position;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
 
 /*
 exp    ::=  L2 ("||" exp | ε)            =     L2 ("||" L2)*
@@ -27,22 +31,93 @@ others ::=  INT_LITERAL | CHAR_LITERAL | STRING_LITERAL | ("-" | "+") exp | valu
  */
 public class Parser {
 
-    private Token token;
+    // binding power of the binary operators indexed by token class ordinal, 0 for any other token
+    private static final int[] PRECEDENCE = new int[TokenClass.values().length];
+    private static final Op[] BINARY_OPS = new Op[TokenClass.values().length];
 
-    // use for backtracking (useful for distinguishing decls from procs when parsing a program for instance)
-    private final Queue<Token> buffer = new LinkedList<>();
+    static {
+        binary(TokenClass.LOGOR, 1, Op.OR);
+        binary(TokenClass.LOGAND, 2, Op.AND);
+        binary(TokenClass.EQ, 3, Op.EQ);
+        binary(TokenClass.NE, 3, Op.NE);
+        binary(TokenClass.LT, 4, Op.LT);
+        binary(TokenClass.LE, 4, Op.LE);
+        binary(TokenClass.GT, 4, Op.GT);
+        binary(TokenClass.GE, 4, Op.GE);
+        binary(TokenClass.PLUS, 5, Op.ADD);
+        binary(TokenClass.MINUS, 5, Op.SUB);
+        binary(TokenClass.ASTERIX, 6, Op.MUL);
+        binary(TokenClass.DIV, 6, Op.DIV);
+        binary(TokenClass.REM, 6, Op.MOD);
+    }
+
+    private static void binary(TokenClass tokenClass, int precedence, Op op) {
+        PRECEDENCE[tokenClass.ordinal()] = precedence;
+        BINARY_OPS[tokenClass.ordinal()] = op;
+    }
+
+    // tokens kept when streaming from a Tokeniser, the grammar never looks more than a handful of tokens ahead
+    private static final int LOOKAHEAD_WINDOW = 16;
+
+    // index of the current token in the token stream
+    private int pos = 0;
+
+    private final TokenBuffer tokens;
+
+    // every type is made through the table, headers share the table of the file including them
+    private TypeTable types = new TypeTable();
 
-    private final Tokeniser tokeniser;
+    // #include expansion, null to ignore the includes
+    private Includes includes;
+    // file being parsed, includes are resolved relative to it
+    private File source;
 
+    // where the errors are reported
+    private PrintStream out = System.out;
 
+
+    /*
+     * Parses straight from the tokeniser through a small ring buffer of tokens.
+     */
     public Parser(Tokeniser tokeniser) {
-        this.tokeniser = tokeniser;
+        this(TokenBuffer.window(tokeniser, LOOKAHEAD_WINDOW));
+    }
+
+    public Parser(TokenBuffer tokens) {
+        this.tokens = tokens;
+    }
+
+    /*
+     * Expands the #include directives of the source file being parsed, instead of ignoring them.
+     * The declarations of a header come before those of the file including it.
+     */
+    public void setIncludes(Includes includes, File source) {
+        this.includes = includes;
+        this.source = source;
+    }
+
+    public void setOutput(PrintStream out) {
+        this.out = out;
+    }
+
+    // tokens lexed so far from the source file, those of its headers are not counted
+    public int getTokenCount() {
+        return tokens.size();
     }
 
     public Program parse() {
-        // get the first token
-        nextToken();
-        return parseProgram();
+        if (includes != null) {
+            try {
+                includes.enter(source.getCanonicalPath()); // a header including it back is a cycle
+            } catch (IOException e) {
+                // only used to detect cycles, the file has been read already
+            }
+        }
+        try {
+            return parseProgram();
+        } finally {
+            tokens.close(); // a pipelined lexer would otherwise wait for a parser which has gone
+        }
     }
 
     public int getErrorCount() {
@@ -50,11 +125,11 @@ public class Parser {
     }
 
     private int error = 0;
-    private Token lastErrorToken;
+    private int lastErrorPos = -1;
 
     private void error(TokenClass... expected) {
 
-        if (lastErrorToken == token) {
+        if (lastErrorPos == pos) {
             // skip this error, same token causing trouble
             return;
         }
@@ -66,54 +141,46 @@ public class Parser {
             sb.append(e);
             sep = "|";
         }
-        System.out.println("Parsing error: expected (" + sb + ") found (" + token + ") at " + token.position);
+        out.println("Parsing error: expected (" + sb + ") found (" + tokens.get(pos) + ") at " + tokens.position(pos));
 
         error++;
-        lastErrorToken = token;
+        lastErrorPos = pos;
     }
 
     /*
-     * Look ahead the i^th element from the stream of token.
+     * Look ahead the class of the i^th element from the stream of token.
      * i should be >= 1
      */
-    private Token lookAhead(int i) {
-        // ensures the buffer has the element we want to look ahead
-        while (buffer.size() < i)
-            buffer.add(tokeniser.nextToken());
-        assert buffer.size() >= i;
-
-        int cnt = 1;
-        for (Token t : buffer) {
-            if (cnt == i)
-                return t;
-            cnt++;
-        }
-
-        assert false; // should never reach this
-        return null;
+    private TokenClass lookAhead(int i) {
+        return tokens.tokenClass(pos + i);
     }
 
 
     /*
-     * Consumes the next token from the tokeniser or the buffer if not empty.
+     * Consumes the current token.
      */
     private void nextToken() {
-        if (!buffer.isEmpty())
-            token = buffer.remove();
-        else
-            token = tokeniser.nextToken();
+        pos++;
+    }
+
+    /*
+     * Data of the current token.
+     */
+    private String data() {
+        return tokens.data(pos);
     }
 
     /*
      * If the current token is equals to the expected one, then skip it, otherwise report an error.
-     * Returns the expected token or null if an error occurred.
+     * Returns the data of the expected token or null if an error occurred.
      */
-    private Token expect(TokenClass... expected) {
+    private String expect(TokenClass... expected) {
+        TokenClass current = tokens.tokenClass(pos);
         for (TokenClass e : expected) {
-            if (e == token.tokenClass) {
-                Token cur = token;
+            if (e == current) {
+                String data = data();
                 nextToken();
-                return cur;
+                return data;
             }
         }
 
@@ -121,40 +188,100 @@ public class Parser {
         return null;
     }
 
+    /*
+     * Returns true if the current token is equals to the expected one.
+     */
+    private boolean accept(TokenClass expected) {
+        return tokens.tokenClass(pos) == expected;
+    }
+
     /*
      * Returns true if the current token is equals to any of the expected ones.
      */
     private boolean accept(TokenClass... expected) {
+        TokenClass current = tokens.tokenClass(pos);
         boolean result = false;
         for (TokenClass e : expected)
-            result |= (e == token.tokenClass);
+            result |= (e == current);
         return result;
     }
 
 
     private Program parseProgram() {
-        parseIncludes();
+        List<Program> headers = parseIncludes();
         List<StructTypeDecl> stds = parseStructDecls();
         List<VarDecl> vds = parseVarDecls();
         List<FunDecl> fds = parseFunDecls();
         expect(TokenClass.EOF);
-        return new Program(stds, vds, fds);
+        for (int i = headers.size() - 1; i >= 0; i--) {
+            Program header = headers.get(i);
+            stds.addAll(0, header.structTypeDecls);
+            vds.addAll(0, header.varDecls);
+            fds.addAll(0, header.funDecls);
+        }
+        return new Program(stds, vds, fds, types);
     }
 
-    // includes are ignored, so does not need to return an AST node
-    private void parseIncludes() {
-        if (accept(TokenClass.INCLUDE)) {
+    // returns the headers expanded, in order, nothing when the includes are ignored
+    private List<Program> parseIncludes() {
+        List<Program> headers = new ArrayList<>();
+        while (accept(TokenClass.INCLUDE)) {
+            Position position = tokens.position(pos);
             nextToken();
-            expect(TokenClass.STRING_LITERAL);
-            parseIncludes();
+            String name = expect(TokenClass.STRING_LITERAL);
+            if (includes != null && name != null) {
+                Program header = parseHeader(name, position);
+                if (header != null)
+                    headers.add(header);
+            }
         }
+        return headers;
+    }
+
+    private Program parseHeader(String name, Position position) {
+        File header = includes.resolve(source, name);
+        String path;
+        TokenBuffer headerTokens;
+        try {
+            path = header.getCanonicalPath();
+            if (includes.isOpen(path)) {
+                includeError("include cycle " + includes.cycle(path), position);
+                return null;
+            }
+            if (!includes.enter(path))
+                return null; // already expanded
+            try {
+                headerTokens = includes.tokens(header, out);
+            } catch (IOException e) {
+                includes.exit();
+                throw e;
+            }
+        } catch (IOException e) {
+            includeError("cannot read \"" + name + "\" (" + header.getPath() + ")", position);
+            return null;
+        }
+
+        Parser parser = new Parser(headerTokens);
+        parser.types = types;
+        parser.out = out;
+        parser.setIncludes(includes, header);
+        Program program = parser.parseProgram();
+        includes.exit();
+        error += parser.error;
+        return program;
+    }
+
+    // the position is in the file containing the #include, which may be a header itself
+    private void includeError(String message, Position position) {
+        out.println("Include error: " + message + " at " + source.getPath() + ":" + position);
+        error++;
     }
 
     private List<StructTypeDecl> parseStructDecls() {
         // structdecl ::= structtype "{" (vardecl)+ "}" ";"    # structure declaration
         // notice that a varDecls could also start with a structType
         List<StructTypeDecl> structTypeDecls = new LinkedList<StructTypeDecl>();
-        if (isStructType() && lookAhead(2).tokenClass == TokenClass.LBRA) // structType {
+        while (isStructType() && lookAhead(2) == TokenClass.LBRA) // structType {
         {
             StructType st = parseStructType();
             expect(TokenClass.LBRA);
@@ -162,19 +289,18 @@ public class Parser {
             expect(TokenClass.RBRA);
             expect(TokenClass.SC);
             structTypeDecls.add(new StructTypeDecl(st, varDecls));
-            structTypeDecls.addAll(parseStructDecls()); // continue
         }
         return structTypeDecls;
     }
 
     private List<VarDecl> parseVarDecls() {
         List<VarDecl> varDecls = new LinkedList<VarDecl>();
-        if (isVarDecls()) {
+        while (isVarDecls()) {
             // normal declaration, e.g. int a;
             Type type = parseType();
             String name = "";
             if (accept(TokenClass.IDENTIFIER)) {
-                name = token.data;
+                name = data();
                 nextToken();
             } else {
                 error(TokenClass.IDENTIFIER);
@@ -182,18 +308,17 @@ public class Parser {
             if (accept(TokenClass.SC)) {
                 nextToken();
                 varDecls.add(new VarDecl(type, name));
-                varDecls.addAll(parseVarDecls()); // continue
             } else if (accept(TokenClass.LSBR)) {
                 // array declaration, e.g. int a[2];
                 nextToken();
-                int n = Integer.parseInt(expect(TokenClass.INT_LITERAL).data);
+                int n = Integer.parseInt(expect(TokenClass.INT_LITERAL));
                 expect(TokenClass.RSBR);
                 expect(TokenClass.SC);
-                Type arrayType = new ArrayType(type, n);
+                Type arrayType = types.array(type, n);
                 varDecls.add(new VarDecl(arrayType, name));
-                varDecls.addAll(parseVarDecls()); // continue
             } else {
                 error(TokenClass.SC, TokenClass.LSBR);
+                break;
             }
         }
         return varDecls; // return an empty LinkedList
@@ -203,73 +328,72 @@ public class Parser {
         // notice that function also starts with "type IDENT"
         if (isType()) {
             int offset = lookAheadAType();
-            return lookAhead(offset).tokenClass == TokenClass.IDENTIFIER &&
-                    (lookAhead(offset + 1).tokenClass == TokenClass.SC || lookAhead(offset + 1).tokenClass == TokenClass.LSBR);
+            return lookAhead(offset) == TokenClass.IDENTIFIER &&
+                    (lookAhead(offset + 1) == TokenClass.SC || lookAhead(offset + 1) == TokenClass.LSBR);
         } else return false;
     }
 
     private boolean isVarDecls(int lookAhead) {
         // notice that function also starts with "type IDENT"
         return isType(lookAhead) &&
-                lookAhead(1 + lookAhead).tokenClass == TokenClass.IDENTIFIER &&
-                (lookAhead(2 + lookAhead).tokenClass == TokenClass.SC || lookAhead(2 + lookAhead).tokenClass == TokenClass.LSBR);
+                lookAhead(1 + lookAhead) == TokenClass.IDENTIFIER &&
+                (lookAhead(2 + lookAhead) == TokenClass.SC || lookAhead(2 + lookAhead) == TokenClass.LSBR);
     }
 
     private List<FunDecl> parseFunDecls() {
         List<FunDecl> funcDecls = new LinkedList<FunDecl>();
-        if (isFunDecls()) {
+        while (isFunDecls()) {
             Type type = parseType();
-            String name = expect(TokenClass.IDENTIFIER).data;
+            String name = expect(TokenClass.IDENTIFIER);
             expect(TokenClass.LPAR);
             List<VarDecl> varDecls = parseParams();
             expect(TokenClass.RPAR);
             Block block = parseBlock();
             funcDecls.add(new FunDecl(type, name, varDecls, block));
-            funcDecls.addAll(parseFunDecls());
         }
         return funcDecls;
     }
 
     private boolean isFunDecls() {
         if (isStructType() &&
-                lookAhead(2).tokenClass == TokenClass.IDENTIFIER &&
-                lookAhead(3).tokenClass == TokenClass.LPAR)
+                lookAhead(2) == TokenClass.IDENTIFIER &&
+                lookAhead(3) == TokenClass.LPAR)
         return true;
         else {
             return isType() &&
-                    lookAhead(1).tokenClass == TokenClass.IDENTIFIER &&
-                    lookAhead(2).tokenClass == TokenClass.LPAR;
+                    lookAhead(1) == TokenClass.IDENTIFIER &&
+                    lookAhead(2) == TokenClass.LPAR;
         }
     }
 
     private List<VarDecl> parseParams() {
         List<VarDecl> varDecls = new LinkedList<VarDecl>();
-        if (isType()) {
-            Type type = parseType();
-            String name = expect(TokenClass.IDENTIFIER).data;
-            varDecls.add(new VarDecl(type, name));
-        }
-        if (accept(TokenClass.COMMA)) {
+        while (true) {
+            if (isType()) {
+                Type type = parseType();
+                String name = expect(TokenClass.IDENTIFIER);
+                varDecls.add(new VarDecl(type, name));
+            }
+            if (!accept(TokenClass.COMMA))
+                return varDecls;
             nextToken(); // consume COMMA
-            varDecls.addAll(parseParams());
         }
-        return varDecls;
     }
 
     private StructType parseStructType() {
         if (accept(TokenClass.STRUCT)) {
             nextToken();
-            return new StructType(expect(TokenClass.IDENTIFIER).data);
+            return types.struct(expect(TokenClass.IDENTIFIER));
         }
         return null;
     }
 
     private boolean isStructType() {
-        return accept(TokenClass.STRUCT) && lookAhead(1).tokenClass == TokenClass.IDENTIFIER;
+        return accept(TokenClass.STRUCT) && lookAhead(1) == TokenClass.IDENTIFIER;
     }
 
     private boolean isStructType(int lookAhaed) {
-        return accept(TokenClass.STRUCT) && lookAhead(1 + lookAhaed).tokenClass == TokenClass.IDENTIFIER;
+        return accept(TokenClass.STRUCT) && lookAhead(1 + lookAhaed) == TokenClass.IDENTIFIER;
     }
 
     private Type parseType() {
@@ -289,7 +413,7 @@ public class Parser {
         } else error(TokenClass.INT, TokenClass.CHAR, TokenClass.VOID, TokenClass.STRUCT);
         if (accept(TokenClass.ASTERIX)) {
             nextToken(); // consume asterix
-            return new PointerType(type);
+            return types.pointer(type);
         } else {
             return type;
         }
@@ -310,10 +434,10 @@ public class Parser {
         if (isType()) {
             if (isStructType()) {
                 offset += 2;
-                if (lookAhead(2).tokenClass == TokenClass.ASTERIX) offset += 1;
+                if (lookAhead(2) == TokenClass.ASTERIX) offset += 1;
             } else {
                 offset += 1;
-                if (lookAhead(1).tokenClass == TokenClass.ASTERIX) offset += 1;
+                if (lookAhead(1) == TokenClass.ASTERIX) offset += 1;
             }
         }
         return offset;
@@ -335,20 +459,15 @@ public class Parser {
     private List<Stmt> parseStmtsForBlock() {
         // no Stmt until reach an '}'
         List<Stmt> stmts = new LinkedList<Stmt>();
-        if (!accept(TokenClass.RBRA)) {
+        while (!accept(TokenClass.RBRA)) {
             Stmt stmt = parseStmt();
             if (stmt == null) {
                 assert false;
                 return stmts; // TODO: should not reach here
-            } else {
-                stmts.add(stmt);
-                stmts.addAll(parseStmtsForBlock());
-                return stmts;
             }
-
-        } else { // reach the end here
-            return stmts; // empty list
+            stmts.add(stmt);
         }
+        return stmts; // reach the end here
     }
 
     private Stmt parseStmt() {
@@ -427,121 +546,31 @@ public class Parser {
         return accept(TokenClass.RETURN);
     }
 
-    // exp    ::=  L2 ("||" exp | ε)            =     L2 ("||" L2)*
+    // exp    ::=  L2 ("||" L2)*
+    // L2     ::=  L3 ("&&" L3)*
+    // L3     ::=  L4 (("=="|"!=") L4)*
+    // L4     ::=  L5 (("<"|"<="|">"|">=") L5)*
+    // L5     ::=  L6 (("+"|"-") L6)*
+    // L6     ::=  C (("*"|"/"|"%") C)*                     # all left-associate
     private Expr parseExp() {
-        return parseLorRest(parseLand());
+        return parseBinary(1);
     }
 
-    private Expr parseLorRest(Expr pre) {
-        if (accept(TokenClass.LOGAND)) {
-            nextToken();
-            Expr cur = parseLand();
-            return parseLorRest(new BinOp(pre, Op.OR, cur));
-        } else {
-            return pre;
-        }
-    }
-
-    //  L2     ::=  L3 ("&&" L2 | ε)             =     L3 ("&&" L3)*
-    private Expr parseLand() {
-        return parseLandRest(parseEq());
-    }
-
-    private Expr parseLandRest(Expr pre) {
-        if (accept(TokenClass.LOGAND)) {
-            nextToken();
-            Expr cur = parseEq();
-            return parseLandRest(new BinOp(pre, Op.AND, cur));
-        } else {
-            return pre;
-        }
-    }
-
-    // L3     ::=  L4 (("=="| "!=") L3 | ε)     =     L4 ("=="|"!=" L4)*
-    private Expr parseEq() {
-        return parseEqRest(parseCompare());
-    }
-
-    private Expr parseEqRest(Expr pre) {
-        if (accept(TokenClass.EQ)) {
-            nextToken();
-            Expr cur = parseCompare();
-            return parseEqRest(new BinOp(pre, Op.EQ, cur));
-        } else if (accept(TokenClass.NE)) {
-            nextToken();
-            Expr cur = parseCompare();
-            return parseEqRest(new BinOp(pre, Op.NE, cur));
-        } else {
-            return pre;
-        }
-    }
-
-    // L4     ::=  L5 ((< |<= | >| >=) L4 | ε)      =     L5 ((< |<= | >| >=) L5)*
-    private Expr parseCompare() {
-        return parseCompareRest(parseAddSub());
-    };
-
-    private Expr parseCompareRest(Expr pre) {
-        if (accept(TokenClass.LT)) {
-            nextToken();
-            Expr cur = parseAddSub();
-            return parseCompareRest(new BinOp(pre, Op.LT, cur));
-        } else if (accept(TokenClass.LE)) {
-            nextToken();
-            Expr cur = parseAddSub();
-            return parseCompareRest(new BinOp(pre, Op.LE, cur));
-        } else if (accept(TokenClass.GT)) {
-            nextToken();
-            Expr cur = parseAddSub();
-            return parseCompareRest(new BinOp(pre, Op.GT, cur));
-        } else if (accept(TokenClass.GE)) {
-            nextToken();
-            Expr cur = parseAddSub();
-            return parseCompareRest(new BinOp(pre, Op.GE, cur));
-        } else {
-            return pre;
-        }
-    }
-
-    // L5     ::=  L6 (("+"|"-") L5 | ε)        =     L6 (("+"|"-") L6)*
-    private Expr parseAddSub() {
-        return parseAddSubRest(parseMulDivMod());
-    };
-
-    private Expr parseAddSubRest(Expr pre) {
-        if (accept(TokenClass.PLUS)) {
-            nextToken();
-            Expr cur = parseMulDivMod();
-            return parseAddSubRest(new BinOp(pre, Op.ADD, cur));
-        } else if (accept(TokenClass.MINUS)) {
-            nextToken();
-            Expr cur = parseMulDivMod();
-            return parseAddSubRest(new BinOp(pre, Op.SUB, cur));
-        } else {
-            return pre;
-        }
-    }
-
-    // L6     ::=  C (("*"|"/"|"%") L6 | ε)     =     C (("*"|"/"|"%") C)*           # left-associate
-    private Expr parseMulDivMod() {
-        return parseMulDivModRest(parseC());
-    }
-
-    private Expr parseMulDivModRest(Expr pre) {
-        if (accept(TokenClass.DIV)) {
-            nextToken();
-            Expr cur = parseC();
-            return parseMulDivModRest(new BinOp(pre, Op.DIV, cur));
-        } else if (accept(TokenClass.ASTERIX)) {
-            nextToken();
-            Expr cur = parseC();
-            return parseMulDivModRest(new BinOp(pre, Op.MUL, cur));
-        } else if (accept(TokenClass.REM)) {
+    /*
+     * Precedence climbing over the binary operators of L2 to L6: parses operands joined by operators
+     * binding at least as tightly as minPrecedence. A run of operators of the same level is folded
+     * to the left in the loop, so the recursion only goes one level deeper per precedence step.
+     */
+    private Expr parseBinary(int minPrecedence) {
+        Expr left = parseC();
+        while (true) {
+            int current = lookAhead(0).ordinal();
+            int precedence = PRECEDENCE[current];
+            if (precedence < minPrecedence) // also stops at any token which is not a binary operator
+                return left;
             nextToken();
-            Expr cur = parseC();
-            return parseMulDivModRest(new BinOp(pre, Op.MOD, cur));
-        } else {
-            return pre;
+            Expr right = parseBinary(precedence + 1);
+            left = new BinOp(left, BINARY_OPS[current], right);
         }
     }
 
@@ -585,12 +614,10 @@ public class Parser {
             nextToken(); // consume (
             preExpr = parseA();
         } else if (accept(TokenClass.IDENTIFIER)) { // IDENT & function call
-            String ident = token.data;
+            String ident = data();
             nextToken();
             preExpr = parseB(ident);
         } else {
-            boolean hi = accept(TokenClass.IDENTIFIER);
-            Token t = token;
             preExpr = parseOthers();
         }
         return parseCRest(preExpr);
@@ -598,35 +625,35 @@ public class Parser {
 
     // C' ::=  "[" exp "]" C' | "." IDENT C' | ε         # arrayaccess & fieldaccess
     private Expr parseCRest(Expr preExpr) {
-        if (accept(TokenClass.LSBR)) { // arrayaccess
-            nextToken();
-            Expr right = parseExp();
-            expect(TokenClass.RSBR);
-            Expr curExpr = new ArrayAccessExpr(preExpr, right);
-            return parseCRest(curExpr); // left-asscociate
-        } else if (accept(TokenClass.DOT)) { // fieldaccess
-            nextToken();
-            String fieldName = token.data;
-            nextToken(); // consume IDENT
-            Expr curExpr = new FieldAccessExpr(preExpr, fieldName);
-            return parseCRest(curExpr);
-        } else { // ε
-            return preExpr;
+        while (true) {
+            if (accept(TokenClass.LSBR)) { // arrayaccess
+                nextToken();
+                Expr right = parseExp();
+                expect(TokenClass.RSBR);
+                preExpr = new ArrayAccessExpr(preExpr, right); // left-asscociate
+            } else if (accept(TokenClass.DOT)) { // fieldaccess
+                nextToken();
+                String fieldName = data();
+                nextToken(); // consume IDENT
+                preExpr = new FieldAccessExpr(preExpr, fieldName);
+            } else { // ε
+                return preExpr;
+            }
         }
     }
 
     // others ::=  INT_LITERAL | CHAR_LITERAL | STRING_LITERAL | ("-" | "+") exp | valueat | addressof | sizeof
     private Expr parseOthers() {
         if (accept(TokenClass.INT_LITERAL)) {
-            String data = token.data;
+            String data = data();
             nextToken();
             return new IntLiteral(data);
         } else if (accept(TokenClass.CHAR_LITERAL)) {
-            String data = token.data;
+            String data = data();
             nextToken();
             return new ChrLiteral(data);
         } else if (accept(TokenClass.STRING_LITERAL)) {
-            String data = token.data;
+            String data = data();
             nextToken();
             return new StrLiteral(data);
         } else if (accept(TokenClass.MINUS)) { // unary minus
@@ -12,7 +12,7 @@ import java.util.*;
 public class NaiveRegAlloc {
 
     // map from virtual register to corresponding uniquely created label
-    private static Map<Register.Virtual, AssemblyItem.Label>  collectVirtualRegisters(AssemblyProgram.Section section) {
+    private static Map<Register.Virtual, AssemblyItem.Label>  collectVirtualRegisters(AssemblyProgram.Section section, AssemblyProgram prog) {
         final Map<Register.Virtual, AssemblyItem.Label> vrMap = new HashMap<Register.Virtual, AssemblyItem.Label>();
 
         section.items.forEach(item ->
@@ -25,7 +25,7 @@ public class NaiveRegAlloc {
                         insn.registers().forEach(reg -> {
                             if (reg instanceof Register.Virtual) {
                                 Register.Virtual vr = (Register.Virtual) reg;
-                                AssemblyItem.Label l = new AssemblyItem.Label(vr.toString());
+                                AssemblyItem.Label l = new AssemblyItem.Label(prog.session, vr.toString());
                                 vrMap.put(vr, l);
                             }
                         });
@@ -80,7 +80,7 @@ public class NaiveRegAlloc {
 
     public static AssemblyProgram run(AssemblyProgram prog) {
 
-        AssemblyProgram newProg = new AssemblyProgram();
+        AssemblyProgram newProg = new AssemblyProgram(prog.session);
 
         // we assume that each function has a single corresponding text section
         prog.sections.forEach(section -> {
@@ -90,7 +90,7 @@ public class NaiveRegAlloc {
                 assert (section.type == AssemblyProgram.Section.Type.TEXT);
 
                 // map from virtual register to corresponding uniquely created label
-                final Map<Register.Virtual, AssemblyItem.Label> vrMap = collectVirtualRegisters(section);
+                final Map<Register.Virtual, AssemblyItem.Label> vrMap = collectVirtualRegisters(section, prog);
 
                 // allocate one label for each virtual register in a new data section
                 AssemblyProgram.Section dataSec = newProg.newSection(AssemblyProgram.Section.Type.DATA);
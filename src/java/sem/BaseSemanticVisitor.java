@@ -1,5 +1,6 @@
 package sem;
 
+import java.io.PrintStream;
 
 /**
  * 
@@ -8,10 +9,17 @@ package sem;
  */
 public abstract class BaseSemanticVisitor<T> implements SemanticVisitor<T> {
 	private int errors;
+	// where the errors are reported
+	protected final PrintStream err;
 	
 	
 	public BaseSemanticVisitor() {
+		this(System.err);
+	}
+
+	public BaseSemanticVisitor(PrintStream err) {
 		errors = 0;
+		this.err = err;
 	}
 	
 	public int getErrorCount() {
@@ -19,7 +27,7 @@ public abstract class BaseSemanticVisitor<T> implements SemanticVisitor<T> {
 	}
 	
 	protected void error(String message) {
-		System.err.println("semantic error: " + message);
+		err.println("semantic error: " + message);
 		errors++;
 	}
 }
@@ -2,7 +2,17 @@ package sem;
 
 import ast.*;
 
+import java.io.PrintStream;
+
 public class LValueVisitor extends BaseSemanticVisitor<Void> {
+
+    public LValueVisitor() {
+    }
+
+    public LValueVisitor(PrintStream err) {
+        super(err);
+    }
+
     @Override
     public Void visitBaseType(BaseType bt) {
         return null;
@@ -2,31 +2,20 @@ package sem;
 
 import ast.*;
 
-import java.util.Stack;
+import java.io.PrintStream;
+import java.util.Map;
 
 public class NameAnalysisVisitor extends BaseSemanticVisitor<Void> {
-	private final Stack<Scope> scopes;
+	// the global declarations go in the outermost scope, along with the built-in functions
+	private final SymbolTable symbols;
 
 	public NameAnalysisVisitor() {
-		this(null);
+		this(BuiltinFunSymbols.create(), System.err);
 	}
 
-	public NameAnalysisVisitor(Scope outer) {
-		this.scopes = new Stack<Scope>();
-		this.scopes.push(new Scope(outer, BuiltinFunSymbols.builtinSymbolTable));
-	}
-
-	public Scope getScope() {
-		return scopes.peek();
-	}
-
-	public Scope pushScope(Scope scope) {
-	    scopes.push(scope);
-	    return scope;
-	}
-
-	public Scope popScope() {
-		return scopes.pop();
+	public NameAnalysisVisitor(Map<String, Symbol> builtins, PrintStream err) {
+		super(err);
+		symbols = new SymbolTable(builtins);
 	}
 
 	@Override
@@ -39,53 +28,53 @@ public class NameAnalysisVisitor extends BaseSemanticVisitor<Void> {
 	public Void visitStructTypeDecl(StructTypeDecl sts) {
 	    // new scope inside a struct
 		// not allowed to declare twice the same field in one struct type decl
-	    pushScope(new Scope(getScope()));
+	    symbols.enterScope();
 		for(VarDecl varDecl: sts.varDecls) {
-		    if (getScope().lookupCurrent(varDecl.varName) != null) {
+		    if (symbols.lookupCurrent(varDecl.varName) != null) {
 		    	error("[name analysis] declare twice the same field in struct: " + varDecl.varName);
 			} else {
-		    	getScope().put(new VarSymbol(varDecl));
+		    	symbols.put(new VarSymbol(varDecl));
 			}
 		}
-		popScope();
+		symbols.exitScope();
 		return null;
 	}
 
 	@Override
 	public Void visitBlock(Block b) {
-	    pushScope(new Scope(getScope()));
+	    symbols.enterScope();
 		for (VarDecl varDecl: b.varDecls) {
 		    varDecl.accept(this);
 		}
 		for (Stmt stmt: b.stmts) {
 		    stmt.accept(this);
 		}
-	    popScope();
+	    symbols.exitScope();
 		return null;
 	}
 
 	@Override
 	public Void visitFunDecl(FunDecl funDecl) {
 		// add fundecl to the scope
-	    if(getScope().lookupCurrent(funDecl.name) != null) {
+	    if(symbols.lookupCurrent(funDecl.name) != null) {
 	    	error("[name analysis] redecl function: " + funDecl.name);
 		} else {
-	    	getScope().put(new FunSymbol(funDecl));
+	    	symbols.put(new FunSymbol(funDecl));
 		}
 
 	    // handle the new scope inside the function's block
-	    pushScope(new Scope(getScope()));
+	    symbols.enterScope();
 		for (VarDecl varDecl: funDecl.params) {
 		    varDecl.accept(this);
 		}
 		funDecl.block.accept(this);
-	    popScope();
+	    symbols.exitScope();
 		return null;
 	}
 
 	@Override
 	public Void visitFunCallExpr(FunCallExpr fc) {
-	    Symbol s = getScope().lookup(fc.funcName);
+	    Symbol s = symbols.lookup(fc.funcName);
 	    if (s == null || !s.isFunSymbol()) {
 	    	error("[name analysis] function has not been decl: " + fc.funcName);
 		} else {
@@ -111,7 +100,7 @@ public class NameAnalysisVisitor extends BaseSemanticVisitor<Void> {
 				funDecl.accept(this);
 			}
 		} catch (NullPointerException e) {
-			e.printStackTrace();
+			e.printStackTrace(err);
 			error("[name analysis] FAIL");
 		}
 		return null;
@@ -120,18 +109,18 @@ public class NameAnalysisVisitor extends BaseSemanticVisitor<Void> {
 	@Override
 	public Void visitVarDecl(VarDecl vd) {
 		// To be completed...
-		Symbol s = getScope().lookupCurrent(vd.varName);
+		Symbol s = symbols.lookupCurrent(vd.varName);
 		if (s != null) {
 		    error("[name analysis] variable decl multiple times: " + vd.varName);
 		} else {
-			getScope().put(new VarSymbol(vd));
+			symbols.put(new VarSymbol(vd));
 		}
 		return null;
 	}
 
 	@Override
 	public Void visitVarExpr(VarExpr v) {
-	    Symbol s = getScope().lookup(v.varName);
+	    Symbol s = symbols.lookup(v.varName);
 	    if (s == null || !s.isVarSymbol()) {
 	        error("[name analysis] variable has been decl: " + v.varName);
 		} else {
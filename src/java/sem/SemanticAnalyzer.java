@@ -1,16 +1,49 @@
 package sem;
 
+import compiler.CompilationSession;
+import compiler.CompilationStats;
+
 import java.util.ArrayList;
 
 public class SemanticAnalyzer {
+
+	// analyse in a single traversal of the AST when possible, rather than one per visitor
+	private final boolean singlePass;
+	// provides the built-in functions and the stream errors are reported on
+	private final CompilationSession session;
+
+	public SemanticAnalyzer() {
+		this(true);
+	}
+
+	public SemanticAnalyzer(boolean singlePass) {
+		this(singlePass, new CompilationSession());
+	}
+
+	public SemanticAnalyzer(CompilationSession session) {
+		this(true, session);
+	}
+
+	public SemanticAnalyzer(boolean singlePass, CompilationSession session) {
+		this.singlePass = singlePass;
+		this.session = session;
+	}
 	
 	public int analyze(ast.Program prog) {
+		if (singlePass) {
+			// reports the same errors as the visitors below, unless TypeCheckVisitor would fail on a missing type
+			SinglePassVisitor v = new SinglePassVisitor(session.getBuiltins(), session.getErr());
+			if (v.analyze(prog))
+				return v.report();
+			session.getStats().count(CompilationStats.Counter.SEMANTIC_FALLBACKS, 1);
+		}
+
 		// List of visitors
 		ArrayList<SemanticVisitor> visitors = new ArrayList<SemanticVisitor>() {{
-			add(new NameAnalysisVisitor());
-			add(new TypeCheckVisitor());
-			add(new LValueVisitor());
-			add(new TypeCheckVisitor());
+			add(new NameAnalysisVisitor(session.getBuiltins(), session.getErr()));
+			add(new TypeCheckVisitor(session.getErr()));
+			add(new LValueVisitor(session.getErr()));
+			add(new TypeCheckVisitor(session.getErr()));
 		}};
 		// Error accumulator
 		int errors = 0;
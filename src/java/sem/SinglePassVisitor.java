@@ -0,0 +1,519 @@
+package sem;
+
+import ast.*;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+/**
+ * Name analysis, type checking and lvalue checking in a single traversal of the AST.
+ *
+ * Every node is visited once: its names are resolved, then its type is computed from the types of its
+ * children and cached in Expr.type, as NameAnalysisVisitor followed by TypeCheckVisitor would. The lvalue
+ * checks of LValueVisitor are only made in the parts of the AST that visitor goes through.
+ *
+ * The error reports of each analysis are kept apart and replayed by report() in the order of the
+ * multi-pass pipeline of SemanticAnalyzer: name analysis, type checking, lvalue checking and type checking
+ * again. The programs where TypeCheckVisitor fails, on the missing type of an expression or on the type
+ * of a dereference or field access which is not a pointer or a structure, are not reproduced. Each place
+ * it would fail at is checked for instead, analyze() then returns false without reporting anything, and
+ * the pipeline has to be run instead. It finds the AST annotated as the visitors annotate it themselves.
+ */
+public class SinglePassVisitor extends BaseSemanticVisitor<Type> {
+
+    private final SymbolTable symbols;
+    private final Stack<FunDecl> funDeclStack = new Stack<>();
+    private final Map<StructType, StructTypeDecl> structMap = new HashMap<>();
+    private TypeTable types = new TypeTable();
+
+    private final List<String> nameErrors = new ArrayList<>();
+    private final List<String> typeErrors = new ArrayList<>();
+    private final List<String> lvalueErrors = new ArrayList<>();
+
+    // false in the subtrees TypeCheckVisitor does not visit (the arguments of a call with the wrong arity)
+    private boolean typeCheck = true;
+    // true in the subtrees LValueVisitor visits
+    private boolean lvalueCheck = false;
+    // set once the type checking reaches a place where TypeCheckVisitor fails
+    private boolean unsupported = false;
+
+    public SinglePassVisitor() {
+        this(BuiltinFunSymbols.create(), System.err);
+    }
+
+    public SinglePassVisitor(Map<String, Symbol> builtins, PrintStream err) {
+        super(err);
+        symbols = new SymbolTable(builtins);
+    }
+
+    /*
+     * Analyses the program, returns false if the errors could not be determined in a single pass. That is
+     * only when TypeCheckVisitor fails on the same program: with a NullPointerException on the missing type
+     * of an expression (after an undeclared name, or a cast it does not handle), or with a ClassCastException
+     * on a non-pointer dereference or a non-structure field access.
+     */
+    public boolean analyze(Program p) {
+        p.accept(this);
+        return !unsupported;
+    }
+
+    /*
+     * Reports the errors found by analyze() and returns their number.
+     */
+    public int report() {
+        nameErrors.forEach(this::error);
+        typeErrors.forEach(this::error);
+        lvalueErrors.forEach(this::error);
+        typeErrors.forEach(this::error);
+        return getErrorCount();
+    }
+
+    private FunDecl getCurFunDecl() {
+        return funDeclStack.peek();
+    }
+
+    private static boolean isLValue(Expr e) {
+        return e instanceof VarExpr || e instanceof FieldAccessExpr ||
+                e instanceof ArrayAccessExpr || e instanceof ValueAtExpr;
+    }
+
+    // the type of a variable, as TypeCheckVisitor.visitVarDecl
+    private Type checkVarDecl(VarDecl vd) {
+        if (vd.type == BaseType.VOID) {
+            typeErrors.add("[Type] Var cannot be VOID");
+        }
+        StructType st = findStructType(vd.type);
+        if (st != null) {
+            st.setStd(structMap.get(st));
+        }
+        return vd.type;
+    }
+
+    /*
+     * a.equals(b), where TypeCheckVisitor compares two types. A missing type, or the missing element type
+     * of a pointer to an undeclared name, fails the comparison where equals() would throw.
+     */
+    private boolean sameType(Type a, Type b) {
+        if (a == null) {
+            unsupported = true;
+            return false;
+        }
+        if (a == b) {
+            return true;
+        }
+        if (b == null || a.getClass() != b.getClass()) {
+            return false;
+        }
+        if (a instanceof PointerType) {
+            return sameType(((PointerType) b).elementType, ((PointerType) a).elementType);
+        } else if (a instanceof ArrayType) {
+            return sameType(((ArrayType) b).elementType, ((ArrayType) a).elementType) &&
+                    ((ArrayType) a).n == ((ArrayType) b).n;
+        }
+        return a.equals(b);
+    }
+
+    private static StructType findStructType(Type t) {
+        if (t instanceof StructType) {
+            return (StructType) t;
+        } else if (t instanceof ArrayType) {
+            return findStructType(((ArrayType) t).elementType);
+        } else if (t instanceof PointerType) {
+            return findStructType(((PointerType) t).elementType);
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public Type visitProgram(Program p) {
+        types = p.types;
+        p.structTypeDecls.forEach(std -> std.accept(this));
+        p.varDecls.forEach(varDecl -> varDecl.accept(this));
+        p.funDecls.forEach(funDecl -> funDecl.accept(this));
+        return null;
+    }
+
+    @Override
+    public Type visitStructTypeDecl(StructTypeDecl sts) {
+        symbols.enterScope();
+        for (VarDecl varDecl : sts.varDecls) {
+            if (symbols.lookupCurrent(varDecl.varName) != null) {
+                nameErrors.add("[name analysis] declare twice the same field in struct: " + varDecl.varName);
+            } else {
+                symbols.put(new VarSymbol(varDecl));
+            }
+        }
+        symbols.exitScope();
+
+        structMap.put(sts.type, sts);
+        sts.varDecls.forEach(this::checkVarDecl);
+        return null;
+    }
+
+    @Override
+    public Type visitVarDecl(VarDecl vd) {
+        if (symbols.lookupCurrent(vd.varName) != null) {
+            nameErrors.add("[name analysis] variable decl multiple times: " + vd.varName);
+        } else {
+            symbols.put(new VarSymbol(vd));
+        }
+        return typeCheck ? checkVarDecl(vd) : null;
+    }
+
+    @Override
+    public Type visitFunDecl(FunDecl funDecl) {
+        if (symbols.lookupCurrent(funDecl.name) != null) {
+            nameErrors.add("[name analysis] redecl function: " + funDecl.name);
+        } else {
+            symbols.put(new FunSymbol(funDecl));
+        }
+
+        symbols.enterScope();
+        funDeclStack.push(funDecl);
+        funDecl.params.forEach(param -> param.accept(this));
+        lvalueCheck = true;
+        funDecl.block.accept(this);
+        lvalueCheck = false;
+        funDeclStack.pop();
+        symbols.exitScope();
+        return null;
+    }
+
+    @Override
+    public Type visitBlock(Block b) {
+        symbols.enterScope();
+        b.varDecls.forEach(varDecl -> varDecl.accept(this));
+        b.stmts.forEach(stmt -> stmt.accept(this));
+        symbols.exitScope();
+        return null;
+    }
+
+    @Override
+    public Type visitExprStmt(ExprStmt es) {
+        es.expr.accept(this);
+        return null;
+    }
+
+    @Override
+    public Type visitIf(If iff) {
+        iff.condition.accept(this);
+        iff.ifBranch.accept(this);
+        if (iff.elseBranch != null) {
+            iff.elseBranch.accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Type visitWhile(While wh) {
+        Type conditionType = wh.condition.accept(this);
+        if (typeCheck && conditionType != BaseType.INT) {
+            typeErrors.add("[Type] while's condition should be an int, get " + conditionType);
+        }
+        wh.stmt.accept(this);
+        return null;
+    }
+
+    @Override
+    public Type visitReturn(Return re) {
+        if (re.expr == null) {
+            if (typeCheck && getCurFunDecl().type != BaseType.VOID) {
+                typeErrors.add("[type] void function should not return anything");
+            }
+        } else {
+            Type exprType = re.expr.accept(this);
+            if (typeCheck && !sameType(exprType, getCurFunDecl().type)) {
+                typeErrors.add("[type] return's expr's type should be equal to the fun type");
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Type visitAssign(Assign as) {
+        boolean lvalue = lvalueCheck;
+        if (lvalue && !isLValue(as.left)) {
+            lvalueErrors.add("[lvalue] not a lvalue in assign: " + as.left);
+            lvalueCheck = false;
+        }
+        Type leftType = as.left.accept(this);
+        Type rightType = as.right.accept(this);
+        lvalueCheck = lvalue;
+
+        if (!typeCheck) {
+            return null;
+        }
+        if (leftType == BaseType.VOID || leftType instanceof ArrayType) {
+            typeErrors.add("[Type] assign should not be void or arraytype, get " + leftType);
+        } else if (!sameType(rightType, leftType)) {
+            typeErrors.add("[Type] lefttype != righttype, get " + leftType + "," + rightType);
+        }
+        return null;
+    }
+
+    @Override
+    public Type visitVarExpr(VarExpr v) {
+        Symbol s = symbols.lookup(v.varName);
+        if (s == null || !s.isVarSymbol()) {
+            nameErrors.add("[name analysis] variable has been decl: " + v.varName);
+        } else {
+            v.varDecl = ((VarSymbol) s).varDecl;
+        }
+
+        if (!typeCheck) {
+            return null;
+        }
+        if (v.varDecl == null) {
+            unsupported = true;
+            return null;
+        }
+        v.type = checkVarDecl(v.varDecl);
+        return v.type;
+    }
+
+    @Override
+    public Type visitFunCallExpr(FunCallExpr fc) {
+        Symbol s = symbols.lookup(fc.funcName);
+        if (s == null || !s.isFunSymbol()) {
+            nameErrors.add("[name analysis] function has not been decl: " + fc.funcName);
+        } else {
+            fc.funDecl = ((FunSymbol) s).funDecl;
+        }
+
+        // LValueVisitor does not look into the arguments
+        boolean lvalue = lvalueCheck;
+        lvalueCheck = false;
+        try {
+            boolean undeclared = typeCheck && fc.funDecl == null;
+            if (undeclared) {
+                unsupported = true;
+            }
+            if (!typeCheck || undeclared || fc.args.size() != fc.funDecl.params.size()) {
+                if (typeCheck && !undeclared) {
+                    typeErrors.add("[type] funcall arg and param mismatch, args: " + fc.args.size() +
+                            " params: " + fc.funDecl.params.size());
+                }
+                // the arguments are only type checked when the arity is right
+                boolean type = typeCheck;
+                typeCheck = false;
+                fc.args.forEach(arg -> arg.accept(this));
+                typeCheck = type;
+                return null;
+            }
+
+            for (int i = 0; i < fc.args.size(); i++) {
+                Type argType = fc.args.get(i).accept(this);
+                Type paramType = checkVarDecl(fc.funDecl.params.get(i));
+                if (paramType instanceof PointerType && argType instanceof ArrayType &&
+                        ((PointerType) paramType).elementType.equals(((ArrayType) argType).elementType)) {
+                    // ok
+                } else if (!sameType(argType, paramType)) {
+                    typeErrors.add("[type] funcall arg param type not match, should be " + paramType + ", get " + argType);
+                }
+            }
+            fc.type = fc.funDecl.type;
+            return fc.type;
+        } finally {
+            lvalueCheck = lvalue;
+        }
+    }
+
+    @Override
+    public Type visitAddressOfExpr(AddressOfExpr ao) {
+        boolean lvalue = lvalueCheck;
+        if (lvalue && !isLValue(ao.expr)) {
+            lvalueErrors.add("[lvalue] not a lvalue in addressof: " + ao.expr);
+            lvalueCheck = false;
+        }
+        Type exprType = ao.expr.accept(this);
+        lvalueCheck = lvalue;
+
+        if (!typeCheck) {
+            return null;
+        }
+        ao.type = types.pointer(exprType);
+        return ao.type;
+    }
+
+    @Override
+    public Type visitArrayAccessExpr(ArrayAccessExpr aa) {
+        Type arrayType = aa.array.accept(this);
+        Type idxType = aa.idx.accept(this);
+        if (!typeCheck) {
+            return null;
+        }
+        if (idxType != BaseType.INT) {
+            typeErrors.add("[Type] arrayaccess idx != INT, get " + idxType);
+        } else if (arrayType instanceof ArrayType) {
+            aa.type = ((ArrayType) arrayType).elementType;
+            return aa.type;
+        } else if (arrayType instanceof PointerType) {
+            aa.type = ((PointerType) arrayType).elementType;
+            return aa.type;
+        } else {
+            typeErrors.add("[Type] arrayaccess array should be arraytype or pointertype, get " + arrayType);
+        }
+        return null;
+    }
+
+    @Override
+    public Type visitBinOp(BinOp bo) {
+        Type leftType = bo.left.accept(this);
+        Type rightType = bo.right.accept(this);
+        if (!typeCheck) {
+            return null;
+        }
+        if (bo.op == Op.NE || bo.op == Op.EQ) {
+            if (leftType instanceof StructType || leftType instanceof ArrayType || leftType == BaseType.VOID) {
+                typeErrors.add("[Type] BinOp NE EQ left type should not be StructType,ArrayType,Void");
+            }
+        } else if (leftType != BaseType.INT) {
+            typeErrors.add("[Type] BinOp left type should be int, get: " + leftType);
+        }
+        if (!sameType(rightType, leftType)) {
+            typeErrors.add("[Type] BinOp right type should equal to left type");
+        }
+        bo.type = BaseType.INT;
+        return bo.type;
+    }
+
+    @Override
+    public Type visitFieldAccessExpr(FieldAccessExpr fa) {
+        // LValueVisitor does not look into the structure
+        boolean lvalue = lvalueCheck;
+        lvalueCheck = false;
+        Type type = fa.structure.accept(this);
+        lvalueCheck = lvalue;
+
+        if (!typeCheck) {
+            return null;
+        }
+        if (!(type instanceof StructType)) {
+            unsupported = true;
+            return null;
+        }
+        StructType structType = (StructType) type;
+        StructTypeDecl structTypeDecl = structType.getStd();
+        if (structTypeDecl == null) {
+            typeErrors.add("[Type] struct has not been declared: " + structType.name);
+        } else {
+            VarDecl varDecl = structTypeDecl.getVarDecl(fa.fieldName);
+            if (varDecl == null) {
+                typeErrors.add("[Type] struct doesn't has field " + fa.fieldName);
+            } else {
+                fa.type = checkVarDecl(varDecl);
+                return fa.type;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Type visitTypecaseExpr(TypecastExpr tc) {
+        Type eType = tc.expr.accept(this);
+        if (!typeCheck) {
+            return null;
+        }
+        if (eType == BaseType.CHAR) {
+            if (tc.t != BaseType.INT) {
+                typeErrors.add("[Type] char can only be casted to Int");
+                return null;
+            }
+            tc.type = BaseType.INT;
+        } else if (eType instanceof ArrayType) {
+            Type elementType = ((ArrayType) eType).elementType;
+            if (!(tc.t instanceof PointerType)) {
+                typeErrors.add("[Type] array can only be casted to pointer");
+                return null;
+            }
+            if (!((PointerType) tc.t).elementType.equals(elementType)) {
+                typeErrors.add("[Type] array cast to pointer, element type not match");
+                return null;
+            }
+            tc.type = tc.t;
+        } else if (eType instanceof PointerType) {
+            if (!(tc.t instanceof PointerType)) {
+                typeErrors.add("[Type] pointer can only be casted to pointer");
+                return null;
+            }
+            tc.type = tc.t;
+        }
+        return tc.type;
+    }
+
+    @Override
+    public Type visitValueAtExpr(ValueAtExpr va) {
+        Type addrType = va.expr.accept(this);
+        if (!typeCheck) {
+            return null;
+        }
+        if (!(addrType instanceof PointerType)) {
+            typeErrors.add("[Type] ValueAt only works on Pointer");
+            unsupported = true;
+            return null;
+        }
+        va.type = ((PointerType) addrType).elementType;
+        return va.type;
+    }
+
+    @Override
+    public Type visitChrLiteral(ChrLiteral cl) {
+        if (!typeCheck) {
+            return null;
+        }
+        cl.type = BaseType.CHAR;
+        return cl.type;
+    }
+
+    @Override
+    public Type visitIntLiteral(IntLiteral il) {
+        if (!typeCheck) {
+            return null;
+        }
+        il.type = BaseType.INT;
+        return il.type;
+    }
+
+    @Override
+    public Type visitStrLiteral(StrLiteral sl) {
+        if (!typeCheck) {
+            return null;
+        }
+        sl.type = types.array(BaseType.CHAR, sl.s.length() + 1);
+        return sl.type;
+    }
+
+    @Override
+    public Type visitSizeOfExpr(SizeOfExpr so) {
+        if (!typeCheck) {
+            return null;
+        }
+        so.type = BaseType.INT;
+        return so.type;
+    }
+
+    @Override
+    public Type visitBaseType(BaseType bt) {
+        return null;
+    }
+
+    @Override
+    public Type visitPointerType(PointerType pt) {
+        return null;
+    }
+
+    @Override
+    public Type visitArrayType(ArrayType at) {
+        return null;
+    }
+
+    @Override
+    public Type visitStructType(StructType st) {
+        return null;
+    }
+}
@@ -0,0 +1,129 @@
+package sem;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The symbols in scope, in a single open-addressed hash table keyed by name rather than one map per scope.
+ *
+ * The slot of a name holds the stack of its bindings, the innermost first, so lookup() is a single probe
+ * whatever the nesting depth. Every binding made is also recorded in an undo log, and leaving a scope pops
+ * the bindings made since it was entered, each in O(1). Nothing is allocated on entering a scope.
+ *
+ * As with one map per scope, a name bound twice in the same scope refers to the last binding.
+ */
+public class SymbolTable {
+
+    private static final class Binding {
+        final Symbol symbol;
+        final int depth;
+        final Binding shadowed;
+
+        Binding(Symbol symbol, int depth, Binding shadowed) {
+            this.symbol = symbol;
+            this.depth = depth;
+            this.shadowed = shadowed;
+        }
+    }
+
+    // names are never removed, a name out of scope keeps its slot with no binding
+    private String[] names = new String[64];
+    private Binding[] bindings = new Binding[64];
+    private int nameCount = 0;
+
+    // slots bound, in order
+    private int[] undo = new int[64];
+    private int undoSize = 0;
+    // size of the undo log when each scope was entered, marks[d] for the scope at depth d + 1
+    private int[] marks = new int[16];
+    private int depth = 0;
+
+    public SymbolTable() {
+    }
+
+    /*
+     * Creates a table whose outermost scope holds the given symbols.
+     */
+    public SymbolTable(Map<String, Symbol> symbols) {
+        symbols.values().forEach(this::put);
+    }
+
+    public void enterScope() {
+        if (depth == marks.length)
+            marks = Arrays.copyOf(marks, depth * 2);
+        marks[depth++] = undoSize;
+    }
+
+    public void exitScope() {
+        int mark = marks[--depth];
+        while (undoSize > mark) {
+            int slot = undo[--undoSize];
+            bindings[slot] = bindings[slot].shadowed;
+        }
+    }
+
+    /*
+     * The innermost binding of the name, null if it is not in scope.
+     */
+    public Symbol lookup(String name) {
+        Binding binding = bindings[slot(name)];
+        return binding == null ? null : binding.symbol;
+    }
+
+    /*
+     * The binding of the name in the current scope, null if it is not bound there.
+     */
+    public Symbol lookupCurrent(String name) {
+        Binding binding = bindings[slot(name)];
+        return binding == null || binding.depth != depth ? null : binding.symbol;
+    }
+
+    public void put(Symbol sym) {
+        int slot = slot(sym.name);
+        if (names[slot] == null) {
+            names[slot] = sym.name;
+            if (++nameCount * 2 > names.length) {
+                slot = grow(slot);
+            }
+        }
+        bindings[slot] = new Binding(sym, depth, bindings[slot]);
+
+        if (undoSize == undo.length)
+            undo = Arrays.copyOf(undo, undoSize * 2);
+        undo[undoSize++] = slot;
+    }
+
+    // the slot of the name, or the empty slot where it would go
+    private int slot(String name) {
+        int mask = names.length - 1;
+        int h = name.hashCode();
+        int slot = (h ^ (h >>> 16)) & mask;
+        while (true) {
+            String other = names[slot];
+            // identifiers are interned by the tokeniser, so the first comparison is usually enough
+            if (other == null || other == name || other.equals(name))
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    // doubles the table and moves the undo log to the new slots, returns the new slot of the given one
+    private int grow(int slot) {
+        String[] oldNames = names;
+        Binding[] oldBindings = bindings;
+        names = new String[oldNames.length * 2];
+        bindings = new Binding[oldNames.length * 2];
+        int[] moved = new int[oldNames.length];
+        for (int i = 0; i < oldNames.length; i++) {
+            if (oldNames[i] != null) {
+                int to = slot(oldNames[i]);
+                names[to] = oldNames[i];
+                bindings[to] = oldBindings[i];
+                moved[i] = to;
+            }
+        }
+        for (int i = 0; i < undoSize; i++)
+            undo[i] = moved[undo[i]];
+        return moved[slot];
+    }
+}
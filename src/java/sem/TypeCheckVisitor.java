@@ -3,6 +3,7 @@ package sem;
 import ast.*;
 import util.SizeHelper;
 
+import java.io.PrintStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Stack;
@@ -11,6 +12,14 @@ public class TypeCheckVisitor extends BaseSemanticVisitor<Type> {
 
     private final Stack<FunDecl> funDeclStack = new Stack<>();
     private final Map<StructType, StructTypeDecl> structMap = new HashMap<StructType, StructTypeDecl>();
+    private TypeTable types = new TypeTable();
+
+    public TypeCheckVisitor() {
+    }
+
+    public TypeCheckVisitor(PrintStream err) {
+        super(err);
+    }
 
     private FunDecl getCurFunDecl() {
         return funDeclStack.peek();
@@ -56,12 +65,13 @@ public class TypeCheckVisitor extends BaseSemanticVisitor<Type> {
 
     @Override
     public Type visitProgram(Program p) {
+        types = p.types;
         try {
             p.structTypeDecls.forEach(std -> std.accept(this));
             p.varDecls.forEach(varDecl -> varDecl.accept(this));
             p.funDecls.forEach(funDecl -> funDecl.accept(this));
         } catch (NullPointerException e) {
-            e.printStackTrace();
+            e.printStackTrace(err);
             error("[type] FAIL");
         }
         return null;
@@ -99,7 +109,7 @@ public class TypeCheckVisitor extends BaseSemanticVisitor<Type> {
 
     @Override
     public Type visitAddressOfExpr(AddressOfExpr ao) {
-        ao.type = new PointerType(ao.expr.accept(this));
+        ao.type = types.pointer(ao.expr.accept(this));
         return ao.type;
     }
 
@@ -258,7 +268,7 @@ public class TypeCheckVisitor extends BaseSemanticVisitor<Type> {
 
     @Override
     public Type visitStrLiteral(StrLiteral sl) {
-        sl.type = new ArrayType(BaseType.CHAR, sl.s.length() + 1);
+        sl.type = types.array(BaseType.CHAR, sl.s.length() + 1);
         return sl.type;
     }
 
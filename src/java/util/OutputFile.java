@@ -0,0 +1,56 @@
+package util;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes an output file of the compiler. A regular file is written aside and renamed into place once complete,
+ * so that a failed write leaves no half written file behind, nor removes the previous one. Anything else, a
+ * device or a link such as /dev/stdout, is written in place and never removed.
+ */
+public final class OutputFile {
+
+    public interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private OutputFile() {
+    }
+
+    /*
+     * Throws FileNotFoundException if the file cannot be created or replaced, its directory missing for one.
+     */
+    public static void write(File file, Content content) throws IOException {
+        Path target = file.toPath();
+        if (Files.exists(target, LinkOption.NOFOLLOW_LINKS) && !Files.isRegularFile(target, LinkOption.NOFOLLOW_LINKS)) {
+            try (OutputStream out = new FileOutputStream(file)) {
+                content.writeTo(out);
+            }
+            return;
+        }
+        if (file.exists() && !file.canWrite())
+            throw new FileNotFoundException(file + " (Permission denied)");
+
+        File temp;
+        try {
+            temp = File.createTempFile("." + file.getName() + ".", ".tmp", file.getAbsoluteFile().getParentFile());
+        } catch (IOException e) {
+            throw new FileNotFoundException(file + " (" + e.getMessage() + ")");
+        }
+        try {
+            try (OutputStream out = new FileOutputStream(temp)) {
+                content.writeTo(out);
+            }
+            Files.move(temp.toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            temp.delete(); // already gone once moved
+        }
+    }
+}
@@ -11,17 +11,22 @@ public class SizeHelper {
         } else if(type instanceof PointerType) {
             return 4;
         } else if(type instanceof StructType) {
+            // types are hash-consed (see TypeTable), so the declaration is looked up once per type
             StructType st = (StructType) type;
-            StructTypeDecl std = st.getStd();
-            return std.varDecls.stream().mapToInt(varDecl -> sizeOf(varDecl.type)).sum();
+            if (st.size == -1)
+                st.size = StructLayout.of(st.getStd()).size;
+            return st.size;
         } else if(type instanceof ArrayType) {
             ArrayType at = (ArrayType) type;
-            int elementSize = sizeOf(at.elementType);
-            int arraySize = elementSize * at.n;
-            if (arraySize % 4 != 0) {
-                arraySize = arraySize - (arraySize % 4) + 4; // padding
+            if (at.size == -1) {
+                int elementSize = sizeOf(at.elementType);
+                int arraySize = elementSize * at.n;
+                if (arraySize % 4 != 0) {
+                    arraySize = arraySize - (arraySize % 4) + 4; // padding
+                }
+                at.size = arraySize;
             }
-            return arraySize;
+            return at.size;
         }
         return 0;
     }
@@ -0,0 +1,95 @@
+package util;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded lock-free queue for exactly one producer thread and one consumer thread.
+ * Each side only writes its own index, the other side reads it through a volatile field and
+ * keeps a plain cached copy so that the shared index is only read when the cached one says full/empty.
+ * put() and take() wait, spinning first and parking after a while, when the queue is full or empty.
+ * Once the consumer closes the queue, put() drops its element instead of waiting for a slot.
+ */
+public class SpscQueue<E> {
+
+    private static final int SPINS = 64;
+    private static final int YIELDS = 64;
+    private static final long PARK_NANOS = 20_000;
+
+    private final Object[] slots;
+    private final int mask;
+
+    // index of the next slot to take, only written by the consumer
+    private volatile long head = 0;
+    // index of the next slot to fill, only written by the producer
+    private volatile long tail = 0;
+
+    // last values of head seen by the producer and of tail seen by the consumer
+    private long producerHead = 0;
+    private long consumerTail = 0;
+
+    private volatile boolean closed = false;
+
+    /*
+     * Creates a queue of capacity rounded up to a power of two.
+     */
+    public SpscQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new Object[size];
+        mask = size - 1;
+    }
+
+    /*
+     * Returns false, without adding the element, if the queue has been closed.
+     */
+    public boolean put(E element) {
+        long t = tail;
+        for (int idle = 0; t - producerHead == slots.length; idle++) {
+            if (closed)
+                return false;
+            producerHead = head;
+            if (t - producerHead == slots.length)
+                idle(idle);
+        }
+        if (closed)
+            return false;
+        slots[(int) t & mask] = element;
+        tail = t + 1; // publishes the slot
+        return true;
+    }
+
+    /*
+     * Throws IllegalStateException if the queue has been closed and holds no element.
+     */
+    @SuppressWarnings("unchecked")
+    public E take() {
+        long h = head;
+        for (int idle = 0; h == consumerTail; idle++) {
+            if (closed && h == tail)
+                throw new IllegalStateException("queue closed");
+            consumerTail = tail;
+            if (h == consumerTail)
+                idle(idle);
+        }
+        int slot = (int) h & mask;
+        E element = (E) slots[slot];
+        slots[slot] = null;
+        head = h + 1; // frees the slot
+        return element;
+    }
+
+    /*
+     * Called by the consumer when it stops taking elements, so that the producer does not wait for it.
+     */
+    public void close() {
+        closed = true;
+    }
+
+    private static void idle(int idle) {
+        if (idle < SPINS)
+            Thread.onSpinWait();
+        else if (idle < SPINS + YIELDS)
+            Thread.yield();
+        else
+            LockSupport.parkNanos(PARK_NANOS);
+    }
+}
@@ -0,0 +1,45 @@
+package util;
+
+import ast.StructTypeDecl;
+import ast.VarDecl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The layout of a struct: its size and the offset of each field, computed once per declaration
+ * and kept on it (StructTypeDecl.layout).
+ *
+ * Fields are laid out downwards from the address of the struct, so the first field is at offset 0
+ * and the next ones at negative offsets.
+ */
+public class StructLayout {
+
+    public final int size;
+    private final Map<String, Integer> offsets;
+
+    private StructLayout(StructTypeDecl std) {
+        offsets = new HashMap<>(std.varDecls.size() * 2);
+        int offset = 0;
+        for (VarDecl varDecl : std.varDecls) {
+            // a field declared twice refers to the first declaration
+            offsets.putIfAbsent(varDecl.varName, offset);
+            offset -= varDecl.size();
+        }
+        size = -offset;
+    }
+
+    public static StructLayout of(StructTypeDecl std) {
+        if (std.layout == null)
+            std.layout = new StructLayout(std);
+        return std.layout;
+    }
+
+    /*
+     * The offset of the field from the address of the struct, past the last field if there is no such field.
+     */
+    public int offsetOf(String fieldName) {
+        Integer offset = offsets.get(fieldName);
+        return offset == null ? -size : offset;
+    }
+}